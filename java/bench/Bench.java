@@ -0,0 +1,115 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * A minimal JMH-style harness: every benchmark runs warmup iterations that
+ * are thrown away, then measurement iterations of a fixed duration.  Each
+ * operation is timed individually, so besides throughput the report has
+ * latency percentiles.
+ *
+ * Settings (system properties):
+ *   bench.warmup      warmup iterations (default 3)
+ *   bench.iterations  measurement iterations (default 5)
+ *   bench.millis      duration of one iteration in ms (default 1000)
+ *   bench.out         CSV file results are appended to, for before/after runs
+ *   bench.label       label written with every CSV row (e.g. a git revision)
+ */
+public class Bench {
+   static final int WARMUP = Integer.getInteger("bench.warmup", 3);
+   static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+   static final long MILLIS = Long.getLong("bench.millis", 1000L);
+   static final String OUT = System.getProperty("bench.out");
+   static final String LABEL = System.getProperty("bench.label", "");
+
+   // at most this many latencies are kept per benchmark
+   private static final int MAX_SAMPLES = 1 << 20;
+
+   /**
+    * One benchmarked operation; i counts the calls so far.
+    */
+   public interface Op {
+      void run (int i) throws Exception;
+   }
+
+   /**
+    * Runs a benchmark and prints (and optionally records) its result.
+    */
+   public static void run (String name, Op op) throws Exception {
+      for (int w = 0; w < WARMUP; ++w)
+         iterate(op, null, 0);
+
+      long[] samples = new long[1024];
+      int count = 0;
+      long totalNanos = 0;
+      for (int m = 0; m < ITERATIONS; ++m){
+         long start = System.nanoTime();
+         long[][] holder = { samples };
+         count = iterate(op, holder, count);
+         samples = holder[0];
+         totalNanos += System.nanoTime() - start;
+      }//end for
+      report(name, Arrays.copyOf(samples, Math.min(count, samples.length)), count, totalNanos);
+   }//end run
+
+   /**
+    * Calls op for MILLIS ms, appending each latency to holder[0] from
+    * position count on.
+    *
+    * @return the new number of samples
+    */
+   private static int iterate (Op op, long[][] holder, int count) throws Exception {
+      long end = System.nanoTime() + MILLIS * 1000000L;
+      int i = 0;
+      while (true){
+         long t0 = System.nanoTime();
+         if (t0 >= end)
+            return count;
+         op.run(i++);
+         if (holder == null)
+            continue;
+         long elapsed = System.nanoTime() - t0;
+         long[] samples = holder[0];
+         if (count == samples.length && samples.length < MAX_SAMPLES)
+            holder[0] = samples = Arrays.copyOf(samples, samples.length * 2);
+         if (count < samples.length)
+            samples[count] = elapsed;
+         ++count;
+      }//end while
+   }//end iterate
+
+   private static void report (String name, long[] samples, int ops, long nanos) throws IOException {
+      Arrays.sort(samples);
+      double throughput = ops * 1e9 / nanos;
+      String line = String.format("%-36s %12.1f ops/s   p50 %9.1f us   p99 %9.1f us   p999 %9.1f us   max %9.1f us",
+         name, throughput, pct(samples, 0.50), pct(samples, 0.99), pct(samples, 0.999),
+         samples.length == 0 ? 0 : samples[samples.length - 1] / 1000.0);
+      System.out.println(line);
+      if (OUT == null)
+         return;
+      PrintWriter csv = new PrintWriter(new FileWriter(OUT, true));
+      try{
+         csv.println(String.format("%s,%s,%.1f,%.1f,%.1f,%.1f,%.1f", LABEL, name, throughput,
+            pct(samples, 0.50), pct(samples, 0.99), pct(samples, 0.999),
+            samples.length == 0 ? 0 : samples[samples.length - 1] / 1000.0));
+      }finally{
+         csv.close();
+      }//end try
+   }//end report
+
+   /**
+    * @return the given percentile of sorted nanosecond samples, in us
+    */
+   private static double pct (long[] sorted, double p) {
+      if (sorted.length == 0)
+         return 0;
+      int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+      return sorted[Math.max(index, 0)] / 1000.0;
+   }//end pct
+}//end Bench
@@ -0,0 +1,104 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the ways of answering CheckConnection on the same random user
+ * pairs: the original loop issuing one query per first-level friend, the
+ * single recursive query of server graph mode, and the in-memory graph.
+ *
+ * Usage: CheckConnectionBenchmark <dbname> <port> <user> [pairs]
+ */
+public class CheckConnectionBenchmark {
+
+   public static void main (String[] args) throws Exception {
+      if (args.length < 3){
+         System.err.println("Usage: java CheckConnectionBenchmark <dbname> <port> <user> [pairs]");
+         return;
+      }//end if
+      int pairs = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+      Class.forName("org.postgresql.Driver").newInstance();
+      ProfNetwork esql = new ProfNetwork(args[0], args[1], args[2], "");
+      try{
+         SocialGraph graph = esql.graph();
+         Random random = new Random(42);
+         int[][] sample = new int[pairs][2];
+         for (int i = 0; i < pairs; ++i){
+            sample[i][0] = randomUser(graph, random);
+            sample[i][1] = randomUser(graph, random);
+         }//end for
+         int levels = ProfNetwork.CONNECTION_LEVELS;
+
+         long start = System.nanoTime();
+         int reachable = 0;
+         for (int i = 0; i < pairs; ++i)
+            if (legacyCheck(esql, sample[i][0], sample[i][1]))
+               ++reachable;
+         report("per-friend queries (2 levels)", pairs, System.nanoTime() - start, reachable);
+
+         start = System.nanoTime();
+         reachable = 0;
+         for (int i = 0; i < pairs; ++i)
+            if (esql.connectionDistance(sample[i][0], sample[i][1], levels) >= 0)
+               ++reachable;
+         report("recursive query (" + levels + " levels)", pairs, System.nanoTime() - start, reachable);
+
+         start = System.nanoTime();
+         reachable = 0;
+         for (int i = 0; i < pairs; ++i)
+            if (graph.withinHops(sample[i][0], sample[i][1], levels))
+               ++reachable;
+         report("in-memory graph (" + levels + " levels)", pairs, System.nanoTime() - start, reachable);
+      }finally{
+         esql.cleanup();
+      }//end try
+   }//end main
+
+   /**
+    * @return a random userNo with at least one accepted connection
+    */
+   static int randomUser (SocialGraph graph, Random random) {
+      int v;
+      do
+         v = random.nextInt(graph.size());
+      while (graph.degree(v) == 0);
+      return v;
+   }//end randomUser
+
+   /**
+    * The original CheckConnection walk: one query for the user's friends,
+    * then one more query for each of those friends.
+    */
+   static boolean legacyCheck (ProfNetwork esql, int usr, int friend) throws Exception {
+      String query = "SELECT c.userNo, c.connectionNo FROM CONNECTION_USR c WHERE (c.userNo = ? or c.connectionNo = ?) AND c.status = 'Accept'";
+      String self = String.valueOf(usr);
+      String target = String.valueOf(friend);
+      List<String> allIds = new ArrayList<String>();
+      HashSet<String> seen = new HashSet<String>();
+      for (List<String> row : esql.executeQueryAndReturnResult(query, usr, usr))
+         for (String id : row)
+            if (!self.equals(id) && seen.add(id))
+               allIds.add(id);
+      for (String id : allIds){
+         if (id.equals(target))
+            return true;
+         int no = Integer.parseInt(id);
+         for (List<String> row : esql.executeQueryAndReturnResult(query, no, no))
+            for (String other : row)
+               if (other.equals(target))
+                  return true;
+      }//end for
+      return false;
+   }//end legacyCheck
+
+   static void report (String name, int ops, long nanos, int reachable) {
+      System.out.println(String.format("%-34s %8.1f us/op %10.0f ops/s  (%d reachable)",
+         name, nanos / 1000.0 / ops, ops * 1e9 / nanos, reachable));
+   }//end report
+}//end CheckConnectionBenchmark
@@ -0,0 +1,118 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The benchmark suite for the data-access and graph paths the menu actions
+ * go through.  Every benchmark runs in the Bench harness, so runs before
+ * and after a change can be compared from the CSV written with
+ * -Dbench.out=results.csv -Dbench.label=<revision>.
+ *
+ * Load a data set first with seed_bench_db.sh (optionally scaled up with
+ * ScaleData), then run e.g. bench.sh ProfNetworkBenchmarks checkConnection.
+ *
+ * Usage: ProfNetworkBenchmarks <dbname> <port> <user> [benchmark names...]
+ */
+public class ProfNetworkBenchmarks {
+   static final String[] ALL = {
+      "executeQuery", "executeQueryAndReturnResult", "executeQueryAndReturnTable", "exists",
+      "checkConnection", "checkConnectionServer", "sendMessage", "searchPeople"
+   };
+
+   public static void main (String[] args) throws Exception {
+      if (args.length < 3){
+         System.err.println("Usage: java ProfNetworkBenchmarks <dbname> <port> <user> [benchmark names...]");
+         return;
+      }//end if
+      String[] names = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : ALL;
+      Class.forName("org.postgresql.Driver").newInstance();
+      final ProfNetwork esql = new ProfNetwork(args[0], args[1], args[2], "");
+      try{
+         // sample real users up front so no benchmark pays for it
+         List<List<String>> rows = esql.executeQueryAndReturnResult("SELECT userId, userNo, COALESCE(name, '') FROM USR");
+         Random random = new Random(42);
+         final String[] ids = new String[1024];
+         final int[] nos = new int[ids.length];
+         final String[] prefixes = new String[ids.length];
+         for (int i = 0; i < ids.length; ++i){
+            List<String> row = rows.get(random.nextInt(rows.size()));
+            ids[i] = row.get(0);
+            nos[i] = Integer.parseInt(row.get(1));
+            String name = row.get(2);
+            prefixes[i] = name.substring(0, Math.min(4, name.length()));
+         }//end for
+         final int mask = ids.length - 1;
+         System.out.println(String.format("%d users, %d warmup x %d measured iterations of %d ms",
+            rows.size(), Bench.WARMUP, Bench.ITERATIONS, Bench.MILLIS));
+
+         for (String name : names){
+            if (name.equals("executeQuery"))
+               Bench.run(name, new Bench.Op() {
+                  public void run (int i) throws Exception {
+                     esql.executeQuery("SELECT * FROM USR WHERE userId = ?", ids[i & mask]);
+                  }
+               });
+            else if (name.equals("executeQueryAndReturnResult"))
+               Bench.run(name, new Bench.Op() {
+                  public void run (int i) throws Exception {
+                     esql.executeQueryAndReturnResult(
+                        "SELECT connectionNo, status FROM CONNECTION_USR WHERE userNo = ?", nos[i & mask]);
+                  }
+               });
+            else if (name.equals("executeQueryAndReturnTable"))
+               Bench.run(name, new Bench.Op() {
+                  public void run (int i) throws Exception {
+                     esql.executeQueryAndReturnTable(
+                        "SELECT connectionNo, status FROM CONNECTION_USR WHERE userNo = ?", nos[i & mask]);
+                  }
+               });
+            else if (name.equals("exists"))
+               Bench.run(name, new Bench.Op() {
+                  public void run (int i) throws Exception {
+                     esql.exists("SELECT 1 FROM USR WHERE userId = ? AND password = ?", ids[i & mask], "x");
+                  }
+               });
+            else if (name.equals("checkConnection")){
+               final SocialGraph graph = esql.graph();
+               Bench.run(name, new Bench.Op() {
+                  public void run (int i) throws Exception {
+                     graph.withinHops(nos[i & mask], nos[(i * 31 + 7) & mask], ProfNetwork.CONNECTION_LEVELS);
+                  }
+               });
+            }else if (name.equals("checkConnectionServer"))
+               Bench.run(name, new Bench.Op() {
+                  public void run (int i) throws Exception {
+                     esql.connectionDistance(nos[i & mask], nos[(i * 31 + 7) & mask], ProfNetwork.CONNECTION_LEVELS);
+                  }
+               });
+            else if (name.equals("sendMessage")){
+               final String marker = "bench-" + System.currentTimeMillis();
+               try{
+                  Bench.run(name, new Bench.Op() {
+                     public void run (int i) throws Exception {
+                        esql.sendMessage(ids[i & mask], ids[(i + 1) & mask], marker).get();
+                     }
+                  });
+               }finally{
+                  esql.executeUpdate("DELETE FROM Message WHERE contents = ?", marker);
+               }//end try
+            }else if (name.equals("searchPeople")){
+               final PeopleIndex people = esql.people();
+               Bench.run(name, new Bench.Op() {
+                  public void run (int i) throws Exception {
+                     people.search(prefixes[i & mask], ProfNetwork.SEARCH_LIMIT);
+                  }
+               });
+            }else
+               System.err.println("Unknown benchmark " + name);
+         }//end for
+      }finally{
+         esql.cleanup();
+      }//end try
+   }//end main
+}//end ProfNetworkBenchmarks
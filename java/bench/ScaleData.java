@@ -0,0 +1,133 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes a scaled-up copy of the data set for benchmarking: USR.csv and
+ * Connection.csv hold `factor` copies of every user and connection, copy k
+ * of user "x" being "x#k" (copy 0 keeps the original id).  A few
+ * connections of every copy are pointed at another copy so the copies form
+ * one graph instead of `factor` disjoint ones.  The other CSV files are
+ * copied unchanged, so they still refer to the original users.
+ *
+ * Usage: ScaleData <data dir> <output dir> <factor>
+ */
+public class ScaleData {
+   // share of connections rewired into another copy
+   static final double CROSS_LINKS = 0.05;
+
+   public static void main (String[] args) throws IOException {
+      if (args.length < 3){
+         System.err.println("Usage: java ScaleData <data dir> <output dir> <factor>");
+         return;
+      }//end if
+      File in = new File(args[0]);
+      File out = new File(args[1]);
+      int factor = Integer.parseInt(args[2]);
+      if (!out.isDirectory() && !out.mkdirs())
+         throw new IOException("Cannot create " + out);
+      Random random = new Random(42);
+
+      List<String[]> users = read(new File(in, "USR.csv"));
+      BufferedWriter w = new BufferedWriter(new FileWriter(new File(out, "USR.csv")));
+      try{
+         w.write(users.get(0)[0]);
+         w.newLine();
+         for (int k = 0; k < factor; ++k)
+            for (int i = 1; i < users.size(); ++i){
+               String[] row = users.get(i);
+               w.write(copyOf(row[0], k));
+               for (int c = 1; c < row.length; ++c)
+                  w.write(',' + row[c]);
+               w.newLine();
+            }//end for
+      }finally{
+         w.close();
+      }//end try
+
+      List<String[]> edges = read(new File(in, "Connection.csv"));
+      HashSet<String> written = new HashSet<String>();
+      w = new BufferedWriter(new FileWriter(new File(out, "Connection.csv")));
+      try{
+         w.write(edges.get(0)[0]);
+         w.newLine();
+         for (int k = 0; k < factor; ++k)
+            for (int i = 1; i < edges.size(); ++i){
+               String[] row = edges.get(i);
+               int other = k;
+               if (factor > 1 && random.nextDouble() < CROSS_LINKS)
+                  other = random.nextInt(factor);
+               String from = copyOf(row[0], k);
+               String to = copyOf(row[1], other);
+               // (userId, connectionId) is the primary key
+               if (!written.add(from + ',' + to))
+                  continue;
+               w.write(from + ',' + to + ',' + row[2]);
+               w.newLine();
+            }//end for
+      }finally{
+         w.close();
+      }//end try
+
+      for (String name : new String[] { "Work_Ex.csv", "Edu_Det.csv" }){
+         List<String[]> rows = read(new File(in, name));
+         w = new BufferedWriter(new FileWriter(new File(out, name)));
+         try{
+            for (String[] row : rows){
+               w.write(join(row));
+               w.newLine();
+            }//end for
+         }finally{
+            w.close();
+         }//end try
+      }//end for
+      System.out.println(String.format("Wrote %d users and %d connections to %s",
+         factor * (users.size() - 1), written.size(), out));
+   }//end main
+
+   static String copyOf (String userId, int k) {
+      return k == 0 ? userId : userId + '#' + k;
+   }
+
+   /**
+    * Reads a CSV file without quoting; the first row is the header, kept
+    * whole in column 0.
+    */
+   static List<String[]> read (File file) throws IOException {
+      List<String[]> rows = new ArrayList<String[]>();
+      BufferedReader r = new BufferedReader(new FileReader(file));
+      try{
+         String line = r.readLine();
+         if (line == null)
+            return rows;
+         rows.add(new String[] { line.trim() });
+         while ((line = r.readLine()) != null){
+            line = line.trim();
+            if (!line.isEmpty())
+               rows.add(line.split(",", -1));
+         }//end while
+      }finally{
+         r.close();
+      }//end try
+      return rows;
+   }//end read
+
+   static String join (String[] row) {
+      StringBuilder sb = new StringBuilder(row[0]);
+      for (int c = 1; c < row.length; ++c)
+         sb.append(',').append(row[c]);
+      return sb.toString();
+   }
+}//end ScaleData
@@ -0,0 +1,92 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares message send throughput of one autocommitted INSERT per message
+ * against the group-commit pipeline, with several concurrent senders that
+ * each wait for their message to be durable before sending the next, the
+ * way NewMessage does.  The messages written are deleted afterwards.
+ *
+ * Usage: SendBenchmark <dbname> <port> <user> [messages per sender] [senders]
+ */
+public class SendBenchmark {
+
+   interface Sender {
+      void send (ProfNetwork esql, String from, String to, String contents) throws Exception;
+   }
+
+   public static void main (String[] args) throws Exception {
+      if (args.length < 3){
+         System.err.println("Usage: java SendBenchmark <dbname> <port> <user> [messages per sender] [senders]");
+         return;
+      }//end if
+      int perSender = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+      int senders = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+      Class.forName("org.postgresql.Driver").newInstance();
+      ProfNetwork esql = new ProfNetwork(args[0], args[1], args[2], "");
+      String marker = "send-benchmark-" + System.currentTimeMillis();
+      try{
+         List<List<String>> users = esql.executeQueryAndReturnResult("SELECT userId FROM USR LIMIT 2");
+         String from = users.get(0).get(0);
+         String to = users.get(1).get(0);
+
+         run("per-row autocommit INSERT", esql, from, to, marker, perSender, senders, new Sender() {
+            public void send (ProfNetwork esql, String from, String to, String contents) throws Exception {
+               esql.executeUpdate("INSERT INTO Message(msgId, senderNo, receiverNo, contents, sendTime, deleteStatus, status) VALUES (?, ?, ?, ?, ?, 0, 'Delivered')",
+                  esql.nextMessageId(), esql.users().number(from), esql.users().number(to), contents,
+                  new Timestamp(System.currentTimeMillis()));
+            }
+         });
+         run("group-commit pipeline", esql, from, to, marker, perSender, senders, new Sender() {
+            public void send (ProfNetwork esql, String from, String to, String contents) throws Exception {
+               esql.sendMessage(from, to, contents).get();
+            }
+         });
+      }finally{
+         esql.executeUpdate("DELETE FROM Message WHERE contents = ?", marker);
+         esql.cleanup();
+      }//end try
+   }//end main
+
+   static void run (String name, final ProfNetwork esql, final String from, final String to, final String marker,
+                    final int perSender, int senders, final Sender sender) throws Exception {
+      final CountDownLatch done = new CountDownLatch(senders);
+      // messages actually sent, and senders stopped by a failure
+      final AtomicLong sent = new AtomicLong();
+      final AtomicLong failures = new AtomicLong();
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int t = 0; t < senders; ++t){
+         threads.add(new Thread(new Runnable() {
+            public void run () {
+               try{
+                  for (int i = 0; i < perSender; ++i){
+                     sender.send(esql, from, to, marker);
+                     sent.incrementAndGet();
+                  }//end for
+               }catch (Exception e){
+                  failures.incrementAndGet();
+               }finally{
+                  done.countDown();
+               }//end try
+            }
+         }));
+      }//end for
+      long start = System.nanoTime();
+      for (Thread thread : threads)
+         thread.start();
+      done.await();
+      long nanos = System.nanoTime() - start;
+      long total = sent.get();
+      System.out.println(String.format("%-28s %10.0f msgs/s %8.1f us/msg  (%d of %d sent, %d of %d senders failed)",
+         name, total * 1e9 / nanos, total == 0 ? 0.0 : nanos / 1000.0 / total,
+         total, (long) perSender * senders, failures.get(), senders));
+   }//end run
+}//end SendBenchmark
@@ -0,0 +1,15 @@
+#!/bin/bash
+# Usage: bench.sh <BenchmarkClass> [args...]
+# Runs against the database named by $DB_NAME/$PGPORT/$USER, like compile.sh
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Indicate the path of the java compiler to use
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+BENCH=$1
+shift
+
+# compile the application together with the benchmarks
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java $DIR/../bench/*.java
+
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar $BENCH $DB_NAME $PGPORT $USER "$@"
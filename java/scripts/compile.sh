@@ -5,9 +5,22 @@ export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
 export PATH=$JAVA_HOME/bin:$PATH
 
 # compile the java program
-javac -d $DIR/../classes $DIR/../src/ProfNetwork.java
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java
 
 #run the java program
 #Use your database name, port number and login
 java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar ProfNetwork $DB_NAME $PGPORT $USER
 
+#or serve many users from one JVM on a local port (connect with nc localhost 9166)
+#java -Dprofnetwork.poolSize=16 -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar ProfNetwork $DB_NAME $PGPORT $USER 9166
+
+#or map the connection graph from a snapshot file, written on first use
+#java -Dprofnetwork.graphSnapshot=$DIR/../graph.snap -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar ProfNetwork $DB_NAME $PGPORT $USER
+#and refresh it periodically with
+#java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar GraphSnapshot $DB_NAME $PGPORT $USER $DIR/../graph.snap
+
+#precompute "people you may know" for every user into RECOMMENDATION
+#java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar Recommender $DB_NAME $PGPORT $USER 10
+
+#run one message archiving pass (the application also runs one every profnetwork.archiveIntervalSec)
+#java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar Archiver $DB_NAME $PGPORT $USER
@@ -0,0 +1,14 @@
+#!/bin/bash
+# Usage: load_data.sh [data dir] [threads]
+# Reloads the database named by $DB_NAME/$PGPORT/$USER from the CSV files
+# (default: ../../data) with the parallel bulk loader
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Indicate the path of the java compiler to use
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+DATA=${1:-$DIR/../../data}
+THREADS=${2:-$(nproc)}
+
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar BulkLoader $DB_NAME $PGPORT $USER $DATA $DIR/../../sql/src/create_index.sql $THREADS
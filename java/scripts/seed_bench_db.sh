@@ -0,0 +1,18 @@
+#!/bin/bash
+# Usage: seed_bench_db.sh [factor]
+# Recreates the database named by $DB_NAME/$PGPORT with the data set
+# scaled up `factor` times (default 1) for the benchmarks in ../bench
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Indicate the path of the java compiler to use
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+FACTOR=${1:-1}
+DATA=$DIR/../bench-data/x$FACTOR
+SQL=$DIR/../../sql/src
+
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java $DIR/../bench/*.java
+java -cp $DIR/../classes ScaleData $DIR/../../data $DATA $FACTOR || exit 1
+
+psql -h localhost -p $PGPORT $DB_NAME < $SQL/create_tables.sql
+$DIR/load_data.sh $DATA
@@ -0,0 +1,12 @@
+#!/bin/bash
+# Usage: test.sh
+# Runs the unit tests; they need no database
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Indicate the path of the java compiler to use
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the application together with the tests
+javac -encoding UTF-8 -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java $DIR/../test/*.java
+
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar TestAll
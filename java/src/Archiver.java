@@ -0,0 +1,240 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * Background upkeep of the partitioned MESSAGE table:
+ *
+ *  - creates the monthly partitions of the coming months, so new messages
+ *    never land in MESSAGE_DEFAULT, and of every month that has rows in
+ *    MESSAGE_DEFAULT anyway, moving them into it;
+ *  - moves messages deleted by both parties (deleteStatus = 3) into
+ *    MESSAGE_ARCHIVE;
+ *  - only if a retention period is set, expires every message of a month
+ *    partition past that age, deleted or not, into MESSAGE_ARCHIVE and
+ *    drops the emptied partition.  This is deletion as far as users are
+ *    concerned: nothing in the application reads MESSAGE_ARCHIVE, so
+ *    expired messages are gone from every inbox, outbox and conversation.
+ *    The archive only keeps them for the administrator.
+ *
+ * Rows are moved by one DELETE ... RETURNING feeding an INSERT, batchSize
+ * rows at a time, sleeping pauseMillis between batches so archiving never
+ * competes with interactive traffic for long.  Rows locked by a user are
+ * skipped and picked up by a later pass, and every pass starts over from
+ * what is still in MESSAGE, so an interrupted pass loses nothing.
+ */
+public class Archiver {
+   // partitions are named message_yYYYYmMM after their month
+   static final String PARTITION_PREFIX = "message_y";
+   // the months of the messages that went to MESSAGE_DEFAULT
+   static final String DEFAULT_MONTHS =
+      "SELECT DISTINCT CAST(date_trunc('month', sendTime) AS date) FROM MESSAGE_DEFAULT";
+
+   private final ProfNetwork _esql;
+   private final long _intervalMillis;
+   private final int _batchSize;
+   private final long _pauseMillis;
+   private final int _monthsAhead;
+   private final int _retentionMonths;
+   private Thread _worker = null;
+   private volatile boolean _running = false;
+
+   /**
+    * @param esql the database to maintain
+    * @param intervalMillis time between passes, or 0 to only run on demand
+    * @param batchSize rows moved per statement
+    * @param pauseMillis sleep between batches
+    * @param monthsAhead months after the current one to create partitions for
+    * @param retentionMonths age in months after which a whole partition
+    *        is expired, i.e. removed from the users' mailboxes; 0 (the
+    *        default) keeps every message
+    */
+   public Archiver (ProfNetwork esql, long intervalMillis, int batchSize, long pauseMillis,
+                    int monthsAhead, int retentionMonths) {
+      this._esql = esql;
+      this._intervalMillis = intervalMillis;
+      this._batchSize = batchSize;
+      this._pauseMillis = pauseMillis;
+      this._monthsAhead = monthsAhead;
+      this._retentionMonths = retentionMonths;
+   }//end Archiver
+
+   /**
+    * Starts the background thread; the first pass runs right away.
+    */
+   public void start () {
+      if (this._intervalMillis <= 0)
+         return;
+      this._running = true;
+      this._worker = new Thread(new Runnable() {
+         public void run () {
+            while (Archiver.this._running){
+               try{
+                  runOnce();
+                  Thread.sleep(Archiver.this._intervalMillis);
+               }catch (InterruptedException e){
+                  // stopping.
+               }catch (SQLException e){
+                  // tried again next pass.
+               }//end try
+            }//end while
+         }
+      }, "message-archiver");
+      this._worker.setDaemon(true);
+      this._worker.start();
+   }//end start
+
+   /**
+    * Stops the background thread, abandoning the current batch's pause.
+    */
+   public void stop () {
+      this._running = false;
+      Thread worker = this._worker;
+      if (worker == null)
+         return;
+      worker.interrupt();
+      try{
+         worker.join();
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+   }//end stop
+
+   /**
+    * Runs one full pass.
+    *
+    * @return the number of messages archived or expired
+    * @throws java.sql.SQLException when a statement fails
+    * @throws java.lang.InterruptedException when interrupted between batches
+    */
+   public long runOnce () throws SQLException, InterruptedException {
+      createPartitions();
+      long moved = moveBatches("MESSAGE", "deleteStatus = 3 ORDER BY sendTime");
+      if (this._retentionMonths > 0)
+         moved += expireOldPartitions();
+      return moved;
+   }//end runOnce
+
+   /**
+    * Creates the missing partitions with create_message_partition (see
+    * create_tables.sql), which moves the month's rows out of
+    * MESSAGE_DEFAULT first.  It returns false rather than failing when
+    * another process made the partition first or rows of the month
+    * arrived while moving; every other failure is thrown.
+    */
+   private void createPartitions () throws SQLException {
+      // read first: the rows cannot be moved while DEFAULT is being scanned
+      ResultTable stray = this._esql.executeQueryAndReturnTable(DEFAULT_MONTHS);
+      for (int i = 0; i < stray.rows(); ++i)
+         this._esql.executeQueryAndReturnTable(
+            "SELECT create_message_partition(CAST(? AS date))", stray.getString(i, 0));
+      Calendar month = startOfMonth(0);
+      for (int i = 0; i <= this._monthsAhead; ++i){
+         this._esql.executeQueryAndReturnTable(
+            "SELECT create_message_partition(CAST(? AS date))", day(month));
+         month.add(Calendar.MONTH, 1);
+      }//end for
+   }//end createPartitions
+
+   /**
+    * Moves every message of the partitions older than the retention
+    * period into MESSAGE_ARCHIVE, whether or not anyone deleted it, and
+    * drops the emptied partitions.
+    */
+   private long expireOldPartitions () throws SQLException, InterruptedException {
+      String oldest = partitionName(startOfMonth(-this._retentionMonths));
+      ResultTable partitions = this._esql.executeQueryAndReturnTable(
+         "SELECT C.relname FROM pg_inherits I JOIN pg_class C ON C.oid = I.inhrelid " +
+         "WHERE I.inhparent = CAST('message' AS regclass) AND C.relname LIKE ? ORDER BY C.relname",
+         PARTITION_PREFIX + "%");
+      long moved = 0;
+      for (int i = 0; i < partitions.rows(); ++i){
+         String partition = partitions.getString(i, 0);
+         // names sort by month, so every name before the oldest kept month has expired
+         if (partition.compareTo(oldest) >= 0)
+            break;
+         moved += moveBatches(partition, "true");
+         if (!this._esql.exists("SELECT 1 FROM " + partition))
+            this._esql.executeUpdate("DROP TABLE " + partition);
+      }//end for
+      return moved;
+   }//end expireOldPartitions
+
+   /**
+    * Moves the rows of a table matching a condition into MESSAGE_ARCHIVE
+    * in batches until none are left.  Every deleted row is inserted, so
+    * the update count is the number of rows moved; a row already in the
+    * archive fails the statement, and the DELETE with it, rather than
+    * being dropped.
+    */
+   private long moveBatches (String table, String condition) throws SQLException, InterruptedException {
+      String move =
+         "WITH moved AS ( " +
+         "   DELETE FROM " + table + " WHERE (msgId, sendTime) IN ( " +
+         "      SELECT msgId, sendTime FROM " + table + " WHERE " + condition +
+         "      LIMIT " + this._batchSize + " FOR UPDATE SKIP LOCKED) " +
+         "   RETURNING msgId, senderNo, receiverNo, contents, sendTime, deleteStatus, status " +
+         ") " +
+         "INSERT INTO MESSAGE_ARCHIVE(msgId, senderNo, receiverNo, contents, sendTime, deleteStatus, status) " +
+         "SELECT msgId, senderNo, receiverNo, TRIM(contents), sendTime, deleteStatus, status FROM moved";
+      long moved = 0;
+      while (true){
+         int n = this._esql.executeUpdate(move);
+         moved += n;
+         if (n < this._batchSize)
+            return moved;
+         Thread.sleep(this._pauseMillis);
+      }//end while
+   }//end moveBatches
+
+   private static Calendar startOfMonth (int monthsFromNow) {
+      Calendar month = new GregorianCalendar();
+      month.set(Calendar.DAY_OF_MONTH, 1);
+      month.set(Calendar.HOUR_OF_DAY, 0);
+      month.set(Calendar.MINUTE, 0);
+      month.set(Calendar.SECOND, 0);
+      month.set(Calendar.MILLISECOND, 0);
+      month.add(Calendar.MONTH, monthsFromNow);
+      return month;
+   }//end startOfMonth
+
+   static String partitionName (Calendar month) {
+      return PARTITION_PREFIX + new SimpleDateFormat("yyyy'm'MM").format(month.getTime());
+   }
+
+   private static String day (Calendar day) {
+      return new SimpleDateFormat("yyyy-MM-dd").format(day.getTime());
+   }
+
+   /**
+    * Runs one archiving pass, e.g. from cron instead of the background
+    * thread.
+    *
+    * usage: java Archiver <db> <port> <user>
+    */
+   public static void main (String[] args) {
+      if (args.length != 3){
+         System.err.println("Usage: java [-classpath <classpath>] Archiver <dbname> <port> <user>");
+         return;
+      }//end if
+      ProfNetwork esql = null;
+      try{
+         Class.forName("org.postgresql.Driver").newInstance();
+         esql = new ProfNetwork(args[0], args[1], args[2], "");
+         long start = System.nanoTime();
+         long moved = esql.archiver().runOnce();
+         System.out.println("Archived " + moved + " messages in " + (System.nanoTime() - start) / 1000000 + " ms");
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+}//end Archiver
@@ -0,0 +1,573 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reloads the database from the CSV files in data/.  Every file is memory
+ * mapped and cut into chunks at line boundaries; chunks are parsed straight
+ * from the mapped bytes (no line Strings, no split, no SimpleDateFormat)
+ * and inserted in parallel with multi-row INSERTs sent in large JDBC
+ * batches, one transaction per batch.
+ *
+ * The indexes of create_index.sql are dropped before the load and rebuilt
+ * in parallel afterwards.  USR is loaded first; the other files name users
+ * by login, which is translated to the userNo assigned while loading USR.
+ * Files that do not exist (Message.csv) are skipped.  The loaded tables are
+ * truncated first, so this replaces whatever data was there.
+ *
+ * The CSV files must be unquoted, comma separated and have a header line.
+ * Dates are M/D/YYYY or YYYY-MM-DD, optionally followed by a time H:MM[:SS].
+ *
+ * Usage: BulkLoader <dbname> <port> <user> [data dir] [create_index.sql] [threads]
+ */
+public class BulkLoader {
+   // rows per INSERT statement and per committed batch
+   static final int ROWS_PER_INSERT = 256;
+   static final int ROWS_PER_COMMIT = Integer.getInteger("profnetwork.loadBatch", 8192);
+   // bytes of CSV handled by one task
+   static final long CHUNK_BYTES = 4L << 20;
+
+   /**
+    * A table and the CSV file it is loaded from.  Column kinds: s(tring),
+    * i(nteger), d(ate), t(imestamp), u(ser login, stored as its userNo).
+    */
+   static class Table {
+      final String name;
+      final String file;
+      final String[] columns;
+      final String kinds;
+
+      Table (String name, String file, String columns, String kinds) {
+         this.name = name;
+         this.file = file;
+         this.columns = columns.split(",");
+         this.kinds = kinds;
+      }
+
+      /**
+       * @return an INSERT of rows rows, each with a placeholder per column
+       */
+      String insert (int rows) {
+         StringBuilder sql = new StringBuilder("INSERT INTO ").append(this.name).append('(');
+         for (int c = 0; c < this.columns.length; ++c)
+            sql.append(c == 0 ? "" : ", ").append(this.columns[c]);
+         sql.append(") VALUES ");
+         for (int r = 0; r < rows; ++r){
+            sql.append(r == 0 ? "(" : ", (");
+            for (int c = 0; c < this.columns.length; ++c)
+               sql.append(c == 0 ? "?" : ", ?");
+            sql.append(')');
+         }//end for
+         return sql.toString();
+      }//end insert
+   }//end Table
+
+   static final Table USR = new Table("USR", "USR.csv",
+      "userId,password,email,name,dateOfBirth", "ssssd");
+   // tables referring to users, loaded once every userNo is known
+   static final Table[] DEPENDENT = {
+      new Table("WORK_EXPR", "Work_Ex.csv", "userNo,company,role,location,startDate,endDate", "usssdd"),
+      new Table("EDUCATIONAL_DETAILS", "Edu_Det.csv", "userNo,instituitionName,major,degree,startdate,enddate", "usssdd"),
+      new Table("CONNECTION_USR", "Connection.csv", "userNo,connectionNo,status", "uus"),
+      new Table("MESSAGE", "Message.csv", "msgId,senderNo,receiverNo,contents,sendTime,deleteStatus,status", "iuustis")
+   };
+
+   // accepted connections, one canonical row per pair
+   static final String FILL_FRIENDSHIP =
+      "INSERT INTO FRIENDSHIP(lo, hi) " +
+      "SELECT DISTINCT LEAST(userNo, connectionNo), GREATEST(userNo, connectionNo) " +
+      "FROM CONNECTION_USR WHERE status = 'Accept' AND userNo <> connectionNo";
+
+   private final ConnectionPool _pool;
+   private final ExecutorService _workers;
+   private final File _dataDir;
+   // login -> userNo of every loaded user
+   private final HashMap<String, Integer> _userNos = new HashMap<String, Integer>();
+
+   BulkLoader (ConnectionPool pool, int threads, File dataDir) {
+      this._pool = pool;
+      this._workers = Executors.newFixedThreadPool(threads);
+      this._dataDir = dataDir;
+   }
+
+   public static void main (String[] args) throws Exception {
+      if (args.length < 3){
+         System.err.println("Usage: java BulkLoader <dbname> <port> <user> [data dir] [create_index.sql] [threads]");
+         return;
+      }//end if
+      File dataDir = new File(args.length > 3 ? args[3] : "data");
+      File indexFile = new File(args.length > 4 ? args[4] : "sql/src/create_index.sql");
+      int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+      Class.forName("org.postgresql.Driver").newInstance();
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      ConnectionPool pool = new ConnectionPool(url, args[2], "", threads, 8);
+      BulkLoader loader = new BulkLoader(pool, threads, dataDir);
+      try{
+         loader.load(readStatements(indexFile));
+      }finally{
+         loader._workers.shutdown();
+         pool.close();
+      }//end try
+   }//end main
+
+   /**
+    * Runs the whole reload.
+    *
+    * @param indexes the CREATE INDEX statements to drop and rebuild
+    */
+   void load (List<String> indexes) throws Exception {
+      long start = System.nanoTime();
+      // restarting the serial keeps userNos dense, and the graph arrays small
+      execute("TRUNCATE TABLE WORK_EXPR, EDUCATIONAL_DETAILS, CONNECTION_USR, FRIENDSHIP, RECOMMENDATION, MESSAGE, MESSAGE_ARCHIVE, USR RESTART IDENTITY");
+      // the change log keeps counting, so running pollers never mistake
+      // new changes for ones they have seen; the loaded rows are not logged
+      execute("TRUNCATE TABLE CONNECTION_CHANGES");
+      for (String index : indexes){
+         try{
+            execute("DROP INDEX " + indexName(index));
+         }catch (SQLException e){
+            // not there yet.
+         }//end try
+      }//end for
+      phase("Dropped indexes", start);
+
+      long t = System.nanoTime();
+      List<Future<?>> tasks = new ArrayList<Future<?>>();
+      execute("ALTER TABLE CONNECTION_USR DISABLE TRIGGER connection_change_log");
+      try{
+         AtomicLong users = submit(USR, tasks);
+         await(tasks);
+         readUserNos();
+         phase("Loaded " + users + " users", t);
+
+         t = System.nanoTime();
+         StringBuilder loaded = new StringBuilder("Loaded");
+         List<AtomicLong> counts = new ArrayList<AtomicLong>();
+         for (Table table : DEPENDENT)
+            counts.add(submit(table, tasks));
+         await(tasks);
+         for (int i = 0; i < DEPENDENT.length; ++i)
+            loaded.append(i == 0 ? " " : ", ").append(counts.get(i)).append(' ').append(DEPENDENT[i].name);
+         phase(loaded.toString(), t);
+      }finally{
+         execute("ALTER TABLE CONNECTION_USR ENABLE TRIGGER connection_change_log");
+      }//end try
+
+      t = System.nanoTime();
+      execute(FILL_FRIENDSHIP);
+      phase("Filled FRIENDSHIP", t);
+
+      t = System.nanoTime();
+      int months = partitionMessages();
+      phase("Partitioned MESSAGE into " + months + " months", t);
+
+      // continue msgIds after the loaded messages
+      execute("SELECT setval('msg_id_seq', COALESCE((SELECT MAX(msgId) FROM MESSAGE), 0) + 1, false)");
+
+      t = System.nanoTime();
+      for (final String index : indexes)
+         tasks.add(this._workers.submit(new Callable<Void>() {
+            public Void call () throws SQLException {
+               execute(index);
+               return null;
+            }
+         }));
+      await(tasks);
+      execute("ANALYZE");
+      phase("Rebuilt " + indexes.size() + " indexes", t);
+      phase("Done", start);
+   }//end load
+
+   /**
+    * Reads back the userNo the serial default gave every user.
+    */
+   private void readUserNos () throws SQLException {
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         // one userNo per user is small enough to read in one go
+         Statement stmt = conn.connection.createStatement();
+         try{
+            ResultSet rs = stmt.executeQuery("SELECT userId, userNo FROM USR");
+            while (rs.next())
+               this._userNos.put(rs.getString(1), rs.getInt(2));
+            rs.close();
+         }finally{
+            stmt.close();
+         }//end try
+      }finally{
+         this._pool.release(conn);
+      }//end try
+   }//end readUserNos
+
+   /**
+    * Gives every month of the loaded messages a partition of its own; the
+    * months are read first, since create_message_partition moves the rows
+    * out of MESSAGE_DEFAULT and cannot do so while it is being scanned.
+    *
+    * @return the number of partitions created
+    */
+   private int partitionMessages () throws SQLException {
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         Statement stmt = conn.connection.createStatement();
+         try{
+            List<String> months = new ArrayList<String>();
+            ResultSet rs = stmt.executeQuery(Archiver.DEFAULT_MONTHS);
+            while (rs.next())
+               months.add(rs.getString(1));
+            rs.close();
+            int created = 0;
+            for (String month : months){
+               rs = stmt.executeQuery("SELECT create_message_partition('" + month + "')");
+               if (rs.next() && rs.getBoolean(1))
+                  ++created;
+               rs.close();
+            }//end for
+            return created;
+         }finally{
+            stmt.close();
+         }//end try
+      }finally{
+         this._pool.release(conn);
+      }//end try
+   }//end partitionMessages
+
+   private static void phase (String what, long start) {
+      System.out.println(String.format("%-60s %8.2f s", what, (System.nanoTime() - start) / 1e9));
+   }
+
+   /**
+    * Submits one task per chunk of a table's file.
+    *
+    * @return the number of rows loaded, complete once the tasks are
+    */
+   private AtomicLong submit (final Table table, List<Future<?>> tasks) throws IOException {
+      final AtomicLong rows = new AtomicLong();
+      final File file = new File(this._dataDir, table.file);
+      if (!file.isFile()){
+         System.out.println("Skipping " + table.name + ": " + file + " not found");
+         return rows;
+      }//end if
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try{
+         FileChannel channel = raf.getChannel();
+         long size = channel.size();
+         // skip the header, then cut at the first line break after every CHUNK_BYTES
+         long from = nextLine(channel, 0, size);
+         while (from < size){
+            long to = nextLine(channel, Math.min(from + CHUNK_BYTES, size), size);
+            final long chunkStart = from;
+            final long chunkEnd = to;
+            tasks.add(this._workers.submit(new Callable<Void>() {
+               public Void call () throws Exception {
+                  rows.addAndGet(loadChunk(table, file, chunkStart, chunkEnd));
+                  return null;
+               }
+            }));
+            from = to;
+         }//end while
+      }finally{
+         raf.close();
+      }//end try
+      return rows;
+   }//end submit
+
+   /**
+    * @return the offset just past the first '\n' at or after pos, or size
+    */
+   private static long nextLine (FileChannel channel, long pos, long size) throws IOException {
+      if (pos >= size)
+         return size;
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size - pos, 64 * 1024));
+      while (buf.hasRemaining())
+         if (buf.get() == '\n')
+            return pos + buf.position();
+      return size;
+   }//end nextLine
+
+   /**
+    * Parses and inserts the lines in [start, end) of a file.
+    *
+    * @return the number of rows inserted
+    */
+   long loadChunk (Table table, File file, long start, long end) throws IOException, SQLException {
+      MappedByteBuffer buf;
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try{
+         buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      }finally{
+         raf.close();
+      }//end try
+
+      int numCols = table.columns.length;
+      int[] fieldStart = new int[numCols];
+      int[] fieldEnd = new int[numCols];
+      byte[] text = new byte[256];
+      // cursor for bulk copies of single fields
+      ByteBuffer field = buf.duplicate();
+      Calendar calendar = new GregorianCalendar();
+      String insertSql = table.insert(ROWS_PER_INSERT);
+
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         conn.connection.setAutoCommit(false);
+         PreparedStatement stmt = conn.prepare(insertSql);
+         // rows of the current statement and of the current batch
+         int inStatement = 0;
+         int inBatch = 0;
+         long total = 0;
+         List<Object[]> tail = new ArrayList<Object[]>();
+         int limit = buf.limit();
+         int pos = 0;
+         while (pos < limit){
+            // split one line into fields without copying it
+            int col = 0;
+            fieldStart[0] = pos;
+            while (pos < limit && buf.get(pos) != '\n'){
+               if (buf.get(pos) == ',' && col + 1 < numCols){
+                  fieldEnd[col++] = pos;
+                  fieldStart[col] = pos + 1;
+               }//end if
+               ++pos;
+            }//end while
+            int lineEnd = pos;
+            if (lineEnd > fieldStart[0] && buf.get(lineEnd - 1) == '\r')
+               --lineEnd;
+            fieldEnd[col] = lineEnd;
+            ++pos;
+            if (lineEnd == fieldStart[0] && col == 0)
+               continue;
+            if (col + 1 != numCols)
+               throw new IOException(file.getName() + ": expected " + numCols + " fields near byte " + (start + fieldStart[0]));
+
+            Object[] row = new Object[numCols];
+            for (int c = 0; c < numCols; ++c){
+               int len = fieldEnd[c] - fieldStart[c];
+               if (len == 0)
+                  continue;
+               if (len > text.length)
+                  text = new byte[len * 2];
+               field.position(fieldStart[c]);
+               field.get(text, 0, len);
+               row[c] = parse(table.kinds.charAt(c), text, len, calendar);
+               if (table.kinds.charAt(c) == 'u'){
+                  Integer no = this._userNos.get(row[c]);
+                  if (no == null)
+                     throw new IOException(file.getName() + ": unknown user '" + row[c] + "' near byte " + (start + fieldStart[0]));
+                  row[c] = no;
+               }//end if
+            }//end for
+
+            // full statements go to the batch; the last few rows of the
+            // chunk get a statement of their own
+            tail.add(row);
+            if (tail.size() < ROWS_PER_INSERT)
+               continue;
+            for (Object[] r : tail)
+               bind(stmt, table, inStatement++, r);
+            tail.clear();
+            stmt.addBatch();
+            inStatement = 0;
+            inBatch += ROWS_PER_INSERT;
+            if (inBatch >= ROWS_PER_COMMIT){
+               stmt.executeBatch();
+               conn.connection.commit();
+               total += inBatch;
+               inBatch = 0;
+            }//end if
+         }//end while
+         if (inBatch > 0){
+            stmt.executeBatch();
+            total += inBatch;
+         }//end if
+         if (!tail.isEmpty()){
+            PreparedStatement last = conn.connection.prepareStatement(table.insert(tail.size()));
+            try{
+               for (int r = 0; r < tail.size(); ++r)
+                  bind(last, table, r, tail.get(r));
+               last.executeUpdate();
+            }finally{
+               last.close();
+            }//end try
+            total += tail.size();
+         }//end if
+         conn.connection.commit();
+         return total;
+      }catch (SQLException e){
+         try{
+            conn.connection.rollback();
+         }catch (SQLException ignored){
+            // ignored.
+         }//end try
+         throw e;
+      }finally{
+         conn.connection.setAutoCommit(true);
+         this._pool.release(conn);
+      }//end try
+   }//end loadChunk
+
+   /**
+    * Binds one row to the placeholders of row r of a multi-row INSERT.
+    */
+   private static void bind (PreparedStatement stmt, Table table, int r, Object[] row) throws SQLException {
+      int base = r * row.length;
+      for (int c = 0; c < row.length; ++c){
+         Object v = row[c];
+         if (v == null){
+            char kind = table.kinds.charAt(c);
+            stmt.setNull(base + c + 1, kind == 'i' || kind == 'u' ? Types.INTEGER : kind == 'd' ? Types.DATE
+                                       : kind == 't' ? Types.TIMESTAMP : Types.VARCHAR);
+         }else if (v instanceof String)
+            stmt.setString(base + c + 1, (String) v);
+         else if (v instanceof Integer)
+            stmt.setInt(base + c + 1, ((Integer) v).intValue());
+         else if (v instanceof Timestamp)
+            stmt.setTimestamp(base + c + 1, (Timestamp) v);
+         else
+            stmt.setDate(base + c + 1, (Date) v);
+      }//end for
+   }//end bind
+
+   /**
+    * Converts the bytes of one field to the value bound for its column.
+    */
+   static Object parse (char kind, byte[] text, int len, Calendar calendar) throws IOException {
+      switch (kind){
+         case 'i':
+            return Integer.valueOf(parseInt(text, 0, len));
+         case 'd':
+            return new Date(parseTime(text, len, calendar));
+         case 't':
+            return new Timestamp(parseTime(text, len, calendar));
+         default:
+            return new String(text, 0, len, StandardCharsets.UTF_8);
+      }//end switch
+   }//end parse
+
+   private static int parseInt (byte[] text, int from, int to) throws IOException {
+      boolean negative = from < to && text[from] == '-';
+      if (from >= to || (negative && from + 1 == to))
+         throw new IOException("Not a number: '" + new String(text, from, to - from, StandardCharsets.UTF_8) + "'");
+      // counted down from 0, since the int range reaches one further below
+      long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+      long value = 0;
+      for (int i = negative ? from + 1 : from; i < to; ++i){
+         int d = text[i] - '0';
+         if (d < 0 || d > 9 || (value = value * 10 - d) < limit)
+            throw new IOException("Not a number: '" + new String(text, from, to - from, StandardCharsets.UTF_8) + "'");
+      }//end for
+      return (int) (negative ? value : -value);
+   }//end parseInt
+
+   /**
+    * Parses M/D/YYYY or YYYY-MM-DD, optionally followed by H:MM[:SS], into
+    * local time millis using the caller's (reused) calendar.
+    */
+   static long parseTime (byte[] text, int len, Calendar calendar) throws IOException {
+      int[] parts = new int[6];
+      int n = 0;
+      int from = 0;
+      for (int i = 0; i <= len && n < parts.length; ++i){
+         byte b = i < len ? text[i] : (byte) ' ';
+         if (b >= '0' && b <= '9')
+            continue;
+         if (i > from)
+            parts[n++] = parseInt(text, from, i);
+         // stop at fractional seconds or a zone
+         if (b == '.' || b == '+')
+            break;
+         from = i + 1;
+      }//end for
+      if (n < 3)
+         throw new IOException("Not a date: '" + new String(text, 0, len, StandardCharsets.UTF_8) + "'");
+      boolean yearFirst = parts[0] > 31;
+      calendar.clear();
+      calendar.set(yearFirst ? parts[0] : parts[2], (yearFirst ? parts[1] : parts[0]) - 1,
+                   yearFirst ? parts[2] : parts[1], parts[3], parts[4], parts[5]);
+      return calendar.getTimeInMillis();
+   }//end parseTime
+
+   /**
+    * Runs one statement on a pooled connection.
+    */
+   private void execute (String sql) throws SQLException {
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         Statement stmt = conn.connection.createStatement();
+         try{
+            stmt.execute(sql);
+         }finally{
+            stmt.close();
+         }//end try
+      }finally{
+         this._pool.release(conn);
+      }//end try
+   }//end execute
+
+   private static void await (List<Future<?>> tasks) throws Exception {
+      try{
+         for (Future<?> task : tasks)
+            task.get();
+      }finally{
+         tasks.clear();
+      }//end try
+   }//end await
+
+   /**
+    * @return the name of the index a CREATE INDEX statement creates
+    */
+   static String indexName (String createIndex) {
+      String[] words = createIndex.trim().split("\\s+");
+      return words[2];
+   }//end indexName
+
+   /**
+    * Reads the statements of an SQL script, without comments.
+    */
+   static List<String> readStatements (File file) throws IOException {
+      StringBuilder script = new StringBuilder();
+      BufferedReader r = new BufferedReader(new FileReader(file));
+      try{
+         String line;
+         while ((line = r.readLine()) != null)
+            script.append(line).append('\n');
+      }finally{
+         r.close();
+      }//end try
+      String sql = script.toString().replaceAll("(?s)/\\*.*?\\*/", " ").replaceAll("--[^\n]*", " ");
+      List<String> statements = new ArrayList<String>();
+      for (String statement : sql.split(";"))
+         if (!statement.trim().isEmpty())
+            statements.add(statement.trim());
+      return statements;
+   }//end readStatements
+}//end BulkLoader
@@ -0,0 +1,224 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Follows CONNECTION_CHANGES, the log a trigger on CONNECTION_USR appends
+ * every request and status change to, and applies the changes to this
+ * process's in-memory state in seq order: accepted connections are added
+ * to the loaded graph and both users' friend lists are invalidated.  Other
+ * processes' NewConnection and ChangeConnection thus show up here within
+ * one poll interval, without rereading the tables.
+ *
+ * The watermark is the seq up to which every change has been applied, so
+ * a failed poll is simply retried from where it left off.  seq values are
+ * handed out before commit, so a lower seq can become visible after a
+ * higher one; the watermark therefore stops at a hole in the sequence
+ * until the hole is older than the gap timeout (a rolled back change never
+ * fills it).  Changes past a hole are applied meanwhile and applied again
+ * later, which is harmless since applying a change twice does nothing new.
+ *
+ * Accepted connections are never removed, so the graph only ever grows.
+ *
+ * The log is polled rather than followed with LISTEN/NOTIFY.  The driver
+ * does have PGConnection.getNotifications, but it never blocks: it only
+ * returns notifications that arrived with the reply to some other query,
+ * so a listener would still issue a query every interval, and it would
+ * need a connection of its own kept out of the pool, since LISTEN belongs
+ * to the session.  Polling the log directly costs the same round trip and
+ * also recovers the changes made while no process was listening.
+ */
+public class ChangeFeed {
+   // changes read per query
+   static final int BATCH_SIZE = 1000;
+
+   private final ProfNetwork _esql;
+   private final long _intervalMillis;
+   private final long _gapTimeoutMillis;
+   private Thread _poller = null;
+   private volatile boolean _running = false;
+   // guards the fields below; held across the log queries, so a lock
+   // rather than a monitor, which would pin a virtual thread polling
+   private final ReentrantLock _lock = new ReentrantLock();
+
+   // every change with seq <= _watermark has been applied
+   private long _watermark = -1;
+   // when the hole right after the watermark was first seen, or 0
+   private long _gapSince = 0;
+   private long _applied = 0;
+
+   /**
+    * @param esql the database to poll and the state to update
+    * @param intervalMillis how often to poll, or 0 to poll only on demand
+    * @param gapTimeoutMillis how long to wait for a hole in seq to fill
+    */
+   public ChangeFeed (ProfNetwork esql, long intervalMillis, long gapTimeoutMillis) {
+      this._esql = esql;
+      this._intervalMillis = intervalMillis;
+      this._gapTimeoutMillis = gapTimeoutMillis;
+   }//end ChangeFeed
+
+   /**
+    * Starts following the log from its current end; the in-memory state is
+    * loaded from the tables afterwards, so it includes everything before.
+    * The end is the last seq handed out, once every transaction that may
+    * hold a seq up to it has ended: MAX(seq) would skip a lower seq that
+    * commits later for good, and after a TRUNCATE, which does not restart
+    * the sequence, would take the next change for a hole.
+    *
+    * @throws java.sql.SQLException when the end of the log cannot be read,
+    *         or transactions writing it are still running after the gap
+    *         timeout
+    */
+   public void start () throws SQLException {
+      this._lock.lock();
+      try{
+         this._watermark = this._esql.settledSequenceValue("connection_changes_seq_seq", this._gapTimeoutMillis);
+      }finally{
+         this._lock.unlock();
+      }//end try
+      if (this._intervalMillis <= 0)
+         return;
+      this._running = true;
+      this._poller = new Thread(new Runnable() {
+         public void run () {
+            pollLoop();
+         }
+      }, "connection-changes");
+      this._poller.setDaemon(true);
+      this._poller.start();
+   }//end start
+
+   /**
+    * Stops the polling thread.
+    */
+   public void stop () {
+      this._running = false;
+      Thread poller = this._poller;
+      if (poller == null)
+         return;
+      poller.interrupt();
+      try{
+         poller.join();
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+   }//end stop
+
+   private void pollLoop () {
+      while (this._running){
+         try{
+            Thread.sleep(this._intervalMillis);
+            poll();
+         }catch (InterruptedException e){
+            // stopping.
+         }catch (SQLException e){
+            // retried from the same watermark next time.
+         }//end try
+      }//end while
+   }//end pollLoop
+
+   /**
+    * Applies every change logged since the last poll.  Called by the
+    * polling thread, and directly after a local change so it is visible
+    * at once.
+    *
+    * @return the number of changes read
+    * @throws java.sql.SQLException when the log cannot be read
+    */
+   public int poll () throws SQLException {
+      this._lock.lock();
+      try{
+         if (this._watermark < 0)
+            return 0;
+         int total = 0;
+         ResultTable rows;
+         do{
+            rows = this._esql.executeQueryAndReturnTable(
+               "SELECT seq, userNo, connectionNo, status FROM CONNECTION_CHANGES WHERE seq > ? ORDER BY seq LIMIT " + BATCH_SIZE,
+               this._watermark);
+            if (rows.isEmpty())
+               break;
+            long before = this._watermark;
+            apply(rows);
+            total += rows.rows();
+            // a batch stuck behind a hole is not read again until it is skipped
+            if (this._watermark == before)
+               break;
+         }while (rows.rows() == BATCH_SIZE);
+         return total;
+      }finally{
+         this._lock.unlock();
+      }//end try
+   }//end poll
+
+   private void apply (ResultTable rows) throws SQLException {
+      int[] lo = new int[rows.rows()];
+      int[] hi = new int[rows.rows()];
+      int accepted = 0;
+      HashSet<Integer> touched = new HashSet<Integer>();
+      boolean contiguous = true;
+      for (ResultTable.Cursor row = rows.cursor(); row.next(); ){
+         long seq = row.getLong(0);
+         int userNo = row.getInt(1);
+         int connectionNo = row.getInt(2);
+         if (contiguous && seq != this._watermark + 1){
+            long now = System.currentTimeMillis();
+            if (this._gapSince == 0)
+               this._gapSince = now;
+            contiguous = now - this._gapSince >= this._gapTimeoutMillis;
+         }//end if
+         if (contiguous){
+            this._watermark = seq;
+            this._gapSince = 0;
+         }//end if
+         touched.add(userNo);
+         touched.add(connectionNo);
+         if ("Accept".equals(row.getString(3)) && userNo != connectionNo){
+            lo[accepted] = Math.min(userNo, connectionNo);
+            hi[accepted] = Math.max(userNo, connectionNo);
+            ++accepted;
+         }//end if
+      }//end for
+
+      if (accepted > 0)
+         this._esql.addConnections(lo, hi, accepted);
+      UserDirectory users = this._esql.users();
+      users.resolve(touched);
+      for (Integer no : touched){
+         String id = users.id(no);
+         if (id != null)
+            this._esql.friends().invalidate(id);
+      }//end for
+      this._applied += rows.rows();
+   }//end apply
+
+   /**
+    * @return the seq up to which every change has been applied
+    */
+   public long watermark () {
+      this._lock.lock();
+      try{
+         return this._watermark;
+      }finally{
+         this._lock.unlock();
+      }//end try
+   }
+
+   /**
+    * @return the number of changes applied so far, repeats included
+    */
+   public long applied () {
+      this._lock.lock();
+      try{
+         return this._applied;
+      }finally{
+         this._lock.unlock();
+      }//end try
+   }
+}//end ChangeFeed
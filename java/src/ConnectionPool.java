@@ -0,0 +1,129 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A small fixed-size pool of physical Postgres connections.  Connections
+ * are opened lazily up to the pool size and each one carries its own
+ * StatementCache, so a template prepared on a connection stays prepared
+ * for as long as the connection lives.
+ */
+public class ConnectionPool {
+   private final String _url;
+   private final String _user;
+   private final String _passwd;
+   private final int _cacheSize;
+
+   // idle connections, most recently released first so hot statement
+   // caches get reused before cold ones
+   private final LinkedBlockingDeque<Pooled> _idle = new LinkedBlockingDeque<Pooled>();
+   // one permit per connection that may be handed out
+   private final Semaphore _permits;
+   private volatile boolean _closed = false;
+
+   /**
+    * A pooled connection together with its statement cache.
+    */
+   public static class Pooled {
+      public final Connection connection;
+      public final StatementCache statements;
+
+      Pooled (Connection connection, int cacheSize) {
+         this.connection = connection;
+         this.statements = new StatementCache(connection, cacheSize);
+      }
+
+      /**
+       * Returns the cached statement for a SQL template.
+       */
+      public PreparedStatement prepare (String sql) throws SQLException {
+         return this.statements.prepare(sql);
+      }
+   }//end Pooled
+
+   /**
+    * Creates a new pool; no connection is opened until first needed.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param size the maximum number of physical connections
+    * @param cacheSize the number of statements cached per connection
+    */
+   public ConnectionPool (String url, String user, String passwd, int size, int cacheSize) {
+      this._url = url;
+      this._user = user;
+      this._passwd = passwd;
+      this._cacheSize = cacheSize;
+      this._permits = new Semaphore(size, true);
+   }//end ConnectionPool
+
+   /**
+    * Borrows a connection, opening a new one if none is idle.  Blocks
+    * while every connection is in use.
+    *
+    * @return a connection that must be handed back with release()
+    * @throws java.sql.SQLException when a new connection cannot be opened
+    */
+   public Pooled acquire () throws SQLException {
+      if (this._closed)
+         throw new SQLException("Connection pool is closed");
+      this._permits.acquireUninterruptibly();
+      Pooled conn = this._idle.pollFirst();
+      if (conn != null)
+         return conn;
+      try{
+         return new Pooled(DriverManager.getConnection(this._url, this._user, this._passwd), this._cacheSize);
+      }catch (SQLException e){
+         this._permits.release();
+         throw e;
+      }//end try
+   }//end acquire
+
+   /**
+    * Hands a connection back to the pool.  A connection that has been
+    * closed underneath us is dropped instead of being reused.
+    */
+   public void release (Pooled conn) {
+      if (conn == null)
+         return;
+      boolean usable;
+      try{
+         usable = !this._closed && !conn.connection.isClosed();
+      }catch (SQLException e){
+         usable = false;
+      }//end try
+      if (usable)
+         this._idle.offerFirst(conn);
+      else
+         discard(conn);
+      this._permits.release();
+   }//end release
+
+   /**
+    * Closes every idle connection and refuses further borrows.
+    */
+   public void close () {
+      this._closed = true;
+      Pooled conn;
+      while ((conn = this._idle.pollFirst()) != null)
+         discard(conn);
+   }//end close
+
+   private static void discard (Pooled conn) {
+      conn.statements.clear();
+      try{
+         conn.connection.close();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end discard
+}//end ConnectionPool
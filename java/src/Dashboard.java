@@ -0,0 +1,132 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What a user looks at right after logging in, fetched in one round trip
+ * by LogIn: their friends, the connection requests sent to them, the
+ * requests they sent, and the newest page of their inbox.  The rows of the
+ * four parts come back from one UNION ALL query tagged with their kind.
+ *
+ * Friends and pending requests go into the FriendCache; the requests sent
+ * to the user are served for as long as that cache entry survives, since
+ * every connection change (local or, through the ChangeFeed, remote)
+ * invalidates it.  The inbox page is served until the user changes a
+ * message or INBOX_TTL_SEC passes, which bounds how long a message sent
+ * by someone else can go unseen.
+ */
+public class Dashboard {
+   static final int INBOX_TTL_SEC = Integer.getInteger("profnetwork.dashboardTtlSec", 30);
+
+   // columns: kind, userNo or msgId, userId, name or status, senderNo, sendTime
+   static final String QUERY =
+      "SELECT 'F', U.userNo, U.userId, CAST(U.name AS varchar), CAST(NULL AS integer), CAST(NULL AS timestamp) " +
+      "FROM FRIENDSHIP F JOIN USR U ON U.userNo = F.hi WHERE F.lo = ? " +
+      "UNION ALL " +
+      "SELECT 'F', U.userNo, U.userId, CAST(U.name AS varchar), NULL, NULL " +
+      "FROM FRIENDSHIP F JOIN USR U ON U.userNo = F.lo WHERE F.hi = ? " +
+      "UNION ALL " +
+      "SELECT 'R', U.userNo, U.userId, CAST(C.status AS varchar), NULL, NULL " +
+      "FROM CONNECTION_USR C JOIN USR U ON U.userNo = C.userNo WHERE C.connectionNo = ? AND C.status <> 'Accept' " +
+      "UNION ALL " +
+      "SELECT 'O', U.userNo, U.userId, NULL, NULL, NULL " +
+      "FROM CONNECTION_USR C JOIN USR U ON U.userNo = C.connectionNo WHERE C.userNo = ? AND C.status = 'Request' " +
+      "UNION ALL " +
+      "(SELECT 'M', msgId, NULL, CAST(status AS varchar), senderNo, sendTime " +
+      " FROM Message WHERE receiverNo = ? AND deleteStatus <> 2 AND deleteStatus <> 3 " +
+      " ORDER BY sendTime DESC, msgId DESC LIMIT ?)";
+
+   private final FriendCache.Entry _friends;
+   // {userId, status} of every unaccepted request sent to the user
+   private final List<String[]> _requests;
+   // rows shaped like MessagePager.inbox
+   private volatile ResultTable _inbox;
+   private final long _inboxExpires;
+
+   private Dashboard (FriendCache.Entry friends, List<String[]> requests, ResultTable inbox) {
+      this._friends = friends;
+      this._requests = requests;
+      this._inbox = inbox;
+      this._inboxExpires = System.currentTimeMillis() + INBOX_TTL_SEC * 1000L;
+   }//end Dashboard
+
+   /**
+    * Fetches a user's dashboard and primes the friend cache with it.
+    *
+    * @param esql the database to read from
+    * @param usr the login name of the user
+    * @param usrNo the userNo of the user
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static Dashboard load (ProfNetwork esql, String usr, int usrNo) throws SQLException {
+      long generation = esql.friends().generation();
+      ResultTable rows = esql.executeQueryAndReturnTable(QUERY,
+         usrNo, usrNo, usrNo, usrNo, usrNo, MessagePager.PAGE_SIZE);
+      List<String[]> friends = new ArrayList<String[]>();
+      Set<String> pending = new HashSet<String>();
+      List<String[]> requests = new ArrayList<String[]>();
+      int[] messages = new int[rows.rows()];
+      int inbox = 0;
+      for (ResultTable.Cursor row = rows.cursor(); row.next(); ){
+         char kind = row.getString(0).charAt(0);
+         if (kind == 'M'){
+            messages[inbox++] = row.row();
+            continue;
+         }//end if
+         String userId = row.getString(2);
+         esql.users().put(userId, row.getInt(1));
+         if (kind == 'F')
+            friends.add(new String[] { userId, row.isNull(3) ? "" : row.getString(3) });
+         else if (kind == 'O')
+            pending.add(userId);
+         else{
+            requests.add(new String[] { userId, row.getString(3) });
+            if ("Request".equals(row.getString(3)))
+               pending.add(userId);
+         }//end if
+      }//end for
+      FriendCache.Entry entry = new FriendCache.Entry(friends, pending);
+      esql.friends().prime(usr, entry, generation);
+      // msgId, senderNo, sendTime, status, as MessagePager.inbox selects them
+      return new Dashboard(entry, requests, rows.select(Arrays.copyOf(messages, inbox), 1, 4, 5, 3));
+   }//end load
+
+   /**
+    * @return the requests sent to the user, or null if connections changed
+    *         since the dashboard was fetched
+    */
+   public List<String[]> requests (ProfNetwork esql, String usr) {
+      return esql.friends().peek(usr) == this._friends ? this._requests : null;
+   }
+
+   /**
+    * @return the newest page of the inbox, or null if it may be stale
+    */
+   public ResultTable inbox () {
+      return System.currentTimeMillis() < this._inboxExpires ? this._inbox : null;
+   }
+
+   /**
+    * Stops serving the inbox page after the user changed a message.
+    */
+   public void invalidateInbox () {
+      this._inbox = null;
+   }
+
+   /**
+    * Invalidates the inbox page of the current session's dashboard, if any.
+    */
+   static void messagesChanged () {
+      Dashboard dashboard = Session.current().dashboard;
+      if (dashboard != null)
+         dashboard.invalidateInbox();
+   }//end messagesChanged
+}//end Dashboard
@@ -0,0 +1,177 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded LRU read-through cache of each user's accepted friends
+ * and pending connection requests.  Browsing a friend's network asks for
+ * the same lists over and over; they only change through NewConnection
+ * and ChangeConnection, which invalidate the users involved.
+ */
+public class FriendCache {
+   private final ProfNetwork _esql;
+   private final LinkedHashMap<String, Entry> _entries;
+
+   // bumped by every invalidation so a load that raced with a write is
+   // not cached
+   private long _generation = 0;
+
+   private final AtomicLong _hits = new AtomicLong();
+   private final AtomicLong _misses = new AtomicLong();
+   private final AtomicLong _evictions = new AtomicLong();
+
+   /**
+    * The cached connections of one user.
+    */
+   public static class Entry {
+      // {userId, name} of every accepted friend
+      public final List<String[]> friends;
+      public final Set<String> friendIds;
+      // users with a request outstanding to or from this user
+      public final Set<String> pending;
+
+      Entry (List<String[]> friends, Set<String> pending) {
+         HashSet<String> ids = new HashSet<String>();
+         for (String[] friend : friends)
+            ids.add(friend[0]);
+         this.friends = Collections.unmodifiableList(friends);
+         this.friendIds = Collections.unmodifiableSet(ids);
+         this.pending = Collections.unmodifiableSet(pending);
+      }
+
+      /**
+       * @return true if the user is a friend or has a pending request
+       */
+      public boolean isConnected (String userId) {
+         return this.friendIds.contains(userId) || this.pending.contains(userId);
+      }
+   }//end Entry
+
+   /**
+    * @param esql the database connections are loaded from
+    * @param capacity the maximum number of users kept
+    */
+   public FriendCache (ProfNetwork esql, final int capacity) {
+      this._esql = esql;
+      this._entries = new LinkedHashMap<String, Entry>(capacity * 2, 0.75f, true) {
+         protected boolean removeEldestEntry (Map.Entry<String, FriendCache.Entry> eldest) {
+            if (size() <= capacity)
+               return false;
+            _evictions.incrementAndGet();
+            return true;
+         }
+      };
+   }//end FriendCache
+
+   /**
+    * Returns the connections of a user, loading them on a miss.
+    *
+    * @param usr the user whose connections are returned
+    * @throws java.sql.SQLException when the connections cannot be loaded
+    */
+   public Entry get (String usr) throws SQLException {
+      long generation;
+      synchronized (this){
+         Entry entry = this._entries.get(usr);
+         if (entry != null){
+            this._hits.incrementAndGet();
+            return entry;
+         }//end if
+         generation = this._generation;
+      }
+      this._misses.incrementAndGet();
+      Entry entry = load(usr);
+      synchronized (this){
+         if (generation == this._generation)
+            this._entries.put(usr, entry);
+      }
+      return entry;
+   }//end get
+
+   /**
+    * @return the cached connections of a user, or null; never loads
+    */
+   public synchronized Entry peek (String usr) {
+      return this._entries.get(usr);
+   }
+
+   /**
+    * @return the invalidation count, to pass to prime()
+    */
+   public synchronized long generation () {
+      return this._generation;
+   }
+
+   /**
+    * Caches connections loaded elsewhere, unless an invalidation happened
+    * since generation was read before loading them.
+    */
+   public synchronized void prime (String usr, Entry entry, long generation) {
+      if (generation == this._generation)
+         this._entries.put(usr, entry);
+   }//end prime
+
+   /**
+    * Drops the cached connections of a user after they changed.
+    */
+   public synchronized void invalidate (String usr) {
+      ++this._generation;
+      this._entries.remove(usr);
+   }//end invalidate
+
+   private Entry load (String usr) throws SQLException {
+      int usrNo = this._esql.users().number(usr);
+      if (usrNo < 0)
+         return new Entry(new ArrayList<String[]>(), new HashSet<String>());
+      // the user is either the lo or the hi of each friendship: one range
+      // scan of the primary key and one of index_friend_rev
+      ResultTable rows = this._esql.executeQueryAndReturnTable(
+         "SELECT U.userNo, U.userId, U.name FROM FRIENDSHIP F JOIN USR U ON U.userNo = F.hi WHERE F.lo = ? " +
+         "UNION ALL " +
+         "SELECT U.userNo, U.userId, U.name FROM FRIENDSHIP F JOIN USR U ON U.userNo = F.lo WHERE F.hi = ?",
+         usrNo, usrNo);
+      List<String[]> friends = new ArrayList<String[]>(rows.rows());
+      for (ResultTable.Cursor row = rows.cursor(); row.next(); ){
+         this._esql.users().put(row.getString(1), row.getInt(0));
+         friends.add(new String[] { row.getString(1), row.isNull(2) ? "" : row.getString(2) });
+      }//end for
+
+      rows = this._esql.executeQueryAndReturnTable(
+         "SELECT U.userId FROM CONNECTION_USR C JOIN USR U ON U.userNo = C.connectionNo WHERE C.userNo = ? AND C.status = 'Request' " +
+         "UNION ALL " +
+         "SELECT U.userId FROM CONNECTION_USR C JOIN USR U ON U.userNo = C.userNo WHERE C.connectionNo = ? AND C.status = 'Request'",
+         usrNo, usrNo);
+      Set<String> pending = new HashSet<String>();
+      for (int i = 0; i < rows.rows(); ++i)
+         pending.add(rows.getString(i, 0));
+      return new Entry(friends, pending);
+   }//end load
+
+   public long getHits () {
+      return this._hits.get();
+   }
+
+   public long getMisses () {
+      return this._misses.get();
+   }
+
+   public long getEvictions () {
+      return this._evictions.get();
+   }
+
+   public String stats () {
+      return "Friend cache: " + getHits() + " hits, " + getMisses() + " misses, "
+         + getEvictions() + " evictions";
+   }
+}//end FriendCache
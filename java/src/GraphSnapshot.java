@@ -0,0 +1,276 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * A binary file holding the connection graph, so it can be opened with
+ * FileChannel.map instead of being read out of FRIENDSHIP row by row.  The
+ * CSR arrays are used in place from the mapping: opening costs no more
+ * than reading the header, the arrays stay off the Java heap, and every
+ * process opening the same file shares one copy through the page cache.
+ *
+ * Layout, all numbers big-endian:
+ *
+ *    int  magic "PNGS", int version
+ *    long watermark    every FRIENDSHIP row with seq <= watermark is included
+ *    int  users        entries of the userId dictionary (largest userNo + 1)
+ *    int  size         vertices of the CSR arrays
+ *    int  adjacency    entries of the neighbors array
+ *    int  nameBytes    length of the dictionary's UTF-8 text
+ *    int  nameOffsets[users + 1]   userId of userNo u is text[nameOffsets[u] .. nameOffsets[u + 1])
+ *    int  offsets[size + 1]
+ *    int  neighbors[adjacency]
+ *    byte text[nameBytes]
+ *
+ * Connections accepted after the watermark are not in the file; the
+ * caller reads them as a delta and adds them with SocialGraph.withEdges.
+ */
+public class GraphSnapshot {
+   static final int MAGIC = 0x504e4753;
+   static final int VERSION = 1;
+   private static final int HEADER_BYTES = 32;
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   // the FRIENDSHIP.seq handed out last, 0 once RESTART IDENTITY reset it
+   static final String LAST_SEQ =
+      "SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM friendship_seq_seq";
+
+   private final long _watermark;
+   private final IntBuffer _nameOffsets;
+   private final ByteBuffer _text;
+   private final SocialGraph _graph;
+
+   private GraphSnapshot (long watermark, IntBuffer nameOffsets, ByteBuffer text, SocialGraph graph) {
+      this._watermark = watermark;
+      this._nameOffsets = nameOffsets;
+      this._text = text;
+      this._graph = graph;
+   }//end GraphSnapshot
+
+   /**
+    * Writes a snapshot of the current tables.  The file is written next to
+    * its final name and renamed over it, so a process opening it meanwhile
+    * sees the old snapshot or the new one, never half of one.
+    *
+    * @param esql the database to read FRIENDSHIP and USR from
+    * @param file where to write the snapshot
+    * @throws java.sql.SQLException when the tables cannot be read, or
+    *         transactions adding connections are still running after
+    *         profnetwork.changeGapTimeoutMs
+    * @throws java.io.IOException when the file cannot be written
+    */
+   public static void write (ProfNetwork esql, File file) throws SQLException, IOException {
+      // seqs are handed out before their transactions commit, and not
+      // in commit order, so the largest seq read is no watermark: a row
+      // with a lower seq may still commit after the read.  Instead take
+      // the last seq handed out once the transactions that may hold one up
+      // to it have finished; the read below then sees every row up to it
+      // that will ever commit.  If they are still running after the gap
+      // timeout nothing is written, rather than a snapshot missing rows
+      // that no delta above its watermark would bring back
+      long watermark = esql.settledSequenceValue("friendship_seq_seq", ProfNetwork.CHANGE_GAP_TIMEOUT_MS);
+      final SocialGraph.Builder builder = new SocialGraph.Builder(1 << 16);
+      esql.executeQueryAndVisit(new RowVisitor() {
+         public void visit (ResultSet row) throws SQLException {
+            builder.addEdge(row.getInt(1), row.getInt(2));
+         }
+      }, "SELECT lo, hi FROM FRIENDSHIP");
+      SocialGraph graph = builder.build();
+
+      Dictionary dictionary = new Dictionary();
+      esql.executeQueryAndVisit(dictionary, "SELECT userNo, userId FROM USR");
+      write(graph, Arrays.copyOf(dictionary.names, dictionary.count), watermark, file);
+   }//end write
+
+   /**
+    * Writes a snapshot of a graph read out of the tables.
+    *
+    * @param graph the connections, without edges added by withEdges
+    * @param names the UTF-8 login name of each userNo, null for none
+    * @param watermark the FRIENDSHIP.seq up to which graph is complete
+    * @param file where to write the snapshot
+    * @throws java.io.IOException when the file cannot be written
+    */
+   static void write (SocialGraph graph, byte[][] names, long watermark, File file) throws IOException {
+      int nameBytes = 0;
+      for (byte[] name : names)
+         nameBytes += name == null ? 0 : name.length;
+
+      File temp = new File(file.getPath() + ".tmp");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+      try{
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeLong(watermark);
+         out.writeInt(names.length);
+         out.writeInt(graph.baseSize());
+         out.writeInt(graph.neighbors().limit());
+         out.writeInt(nameBytes);
+         int at = 0;
+         out.writeInt(at);
+         for (byte[] name : names){
+            at += name == null ? 0 : name.length;
+            out.writeInt(at);
+         }//end for
+         IntBuffer offsets = graph.offsets();
+         while (offsets.hasRemaining())
+            out.writeInt(offsets.get());
+         IntBuffer neighbors = graph.neighbors();
+         while (neighbors.hasRemaining())
+            out.writeInt(neighbors.get());
+         for (byte[] name : names)
+            if (name != null)
+               out.write(name);
+      }finally{
+         out.close();
+      }//end try
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }//end write
+
+   /**
+    * Collects the UTF-8 login names of the users by userNo.
+    */
+   private static class Dictionary implements RowVisitor {
+      byte[][] names = new byte[1024][];
+      // one more than the largest userNo
+      int count = 0;
+
+      public void visit (ResultSet row) throws SQLException {
+         int userNo = row.getInt(1);
+         if (userNo >= this.names.length)
+            this.names = Arrays.copyOf(this.names, Math.max(userNo + 1, this.names.length * 2));
+         this.names[userNo] = row.getString(2).trim().getBytes(UTF8);
+         this.count = Math.max(this.count, userNo + 1);
+      }//end visit
+   }//end Dictionary
+
+   /**
+    * Maps a snapshot file.  The mapping stays valid after the file is
+    * replaced by a newer snapshot.
+    *
+    * @param file the snapshot to open
+    * @return the opened snapshot
+    * @throws java.io.IOException when the file cannot be read or is not a
+    *         snapshot of this version
+    */
+   public static GraphSnapshot open (File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      MappedByteBuffer map;
+      try{
+         map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      }finally{
+         raf.close();
+      }//end try
+      if (map.capacity() < HEADER_BYTES || map.getInt(0) != MAGIC)
+         throw new IOException(file + " is not a graph snapshot");
+      if (map.getInt(4) != VERSION)
+         throw new IOException(file + " has snapshot version " + map.getInt(4) + ", expected " + VERSION);
+      long watermark = map.getLong(8);
+      int users = map.getInt(16);
+      int size = map.getInt(20);
+      int adjacency = map.getInt(24);
+      int nameBytes = map.getInt(28);
+      long expected = HEADER_BYTES + 4L * (users + 1) + 4L * (size + 1) + 4L * adjacency + nameBytes;
+      if (users < 0 || size < 0 || adjacency < 0 || nameBytes < 0 || expected != map.capacity())
+         throw new IOException(file + " is truncated or corrupt");
+
+      int at = HEADER_BYTES;
+      IntBuffer nameOffsets = ints(map, at, users + 1);
+      at += 4 * (users + 1);
+      IntBuffer offsets = ints(map, at, size + 1);
+      at += 4 * (size + 1);
+      IntBuffer neighbors = ints(map, at, adjacency);
+      at += 4 * adjacency;
+      map.position(at);
+      ByteBuffer text = map.slice();
+      return new GraphSnapshot(watermark, nameOffsets, text, new SocialGraph(size, offsets, neighbors));
+   }//end open
+
+   private static IntBuffer ints (MappedByteBuffer map, int at, int count) {
+      ByteBuffer view = map.duplicate();
+      view.position(at);
+      view.limit(at + 4 * count);
+      return view.slice().asIntBuffer();
+   }//end ints
+
+   /**
+    * @return the FRIENDSHIP.seq up to which every row is included
+    */
+   public long watermark () {
+      return this._watermark;
+   }
+
+   /**
+    * @return the graph of the connections in the snapshot, backed by the
+    *         mapping
+    */
+   public SocialGraph graph () {
+      return this._graph;
+   }
+
+   /**
+    * @return the login name of a userNo, or null if the snapshot has no
+    *         such user
+    */
+   public String userId (int userNo) {
+      if (userNo < 0 || userNo + 1 >= this._nameOffsets.limit())
+         return null;
+      int from = this._nameOffsets.get(userNo);
+      int to = this._nameOffsets.get(userNo + 1);
+      if (from == to)
+         return null;
+      byte[] name = new byte[to - from];
+      ByteBuffer text = this._text.duplicate();
+      text.position(from);
+      text.get(name);
+      return new String(name, UTF8);
+   }//end userId
+
+   /**
+    * Writes a snapshot of a database, e.g. from cron, for the application
+    * to open with -Dprofnetwork.graphSnapshot=file.
+    *
+    * usage: java GraphSnapshot <db> <port> <user> <file>
+    */
+   public static void main (String[] args) {
+      if (args.length != 4){
+         System.err.println("Usage: java [-classpath <classpath>] GraphSnapshot <dbname> <port> <user> <file>");
+         return;
+      }//end if
+      ProfNetwork esql = null;
+      try{
+         Class.forName("org.postgresql.Driver").newInstance();
+         esql = new ProfNetwork(args[0], args[1], args[2], "");
+         long start = System.nanoTime();
+         File file = new File(args[3]);
+         write(esql, file);
+         GraphSnapshot snapshot = open(file);
+         System.out.println("Wrote " + file + ": " + snapshot.graph().size() + " users, "
+            + snapshot.graph().adjacencyCount() / 2 + " connections up to seq " + snapshot.watermark()
+            + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+}//end GraphSnapshot
@@ -0,0 +1,83 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out ids from a Postgres sequence in blocks.  The sequence is
+ * created with INCREMENT BY equal to the block size, so every nextval
+ * reserves a whole block [value, value + blockSize) for this process.
+ * Ids inside a block are handed out from memory with an atomic counter;
+ * the database is only asked again when the block runs out.
+ *
+ * Ids are unique across processes but not gap free: whatever is left of
+ * a block when the process exits is never used.
+ */
+public class IdAllocator {
+   private final ProfNetwork _esql;
+   private final String _sequence;
+   private final int _blockSize;
+   private volatile Block _block = null;
+   // held while a block is reserved; not a monitor, so virtual threads
+   // waiting for the database are not pinned
+   private final ReentrantLock _refill = new ReentrantLock();
+
+   private static class Block {
+      final AtomicInteger next;
+      final int end;
+
+      Block (int start, int end) {
+         this.next = new AtomicInteger(start);
+         this.end = end;
+      }
+   }//end Block
+
+   /**
+    * Creates an allocator over a sequence
+    *
+    * @param esql the database the sequence lives in
+    * @param sequence name of the DB sequence
+    * @param blockSize the INCREMENT BY of the sequence
+    */
+   public IdAllocator (ProfNetwork esql, String sequence, int blockSize) {
+      this._esql = esql;
+      this._sequence = sequence;
+      this._blockSize = blockSize;
+   }//end IdAllocator
+
+   /**
+    * @return the next unused id
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public int next () throws SQLException {
+      while (true){
+         Block block = this._block;
+         if (block != null){
+            int id = block.next.getAndIncrement();
+            if (id < block.end)
+               return id;
+         }//end if
+         refill(block);
+      }//end while
+   }//end next
+
+   /**
+    * Reserves a new block unless another thread already replaced the
+    * exhausted one.
+    */
+   private void refill (Block exhausted) throws SQLException {
+      this._refill.lock();
+      try{
+         if (this._block != exhausted)
+            return;
+         int start = this._esql.getNextSeqVal(this._sequence);
+         this._block = new Block(start, start + this._blockSize);
+      }finally{
+         this._refill.unlock();
+      }//end try
+   }//end refill
+}//end IdAllocator
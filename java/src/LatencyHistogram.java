@@ -0,0 +1,98 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds.  Buckets are
+ * logarithmic: every power of two is split into SUB linear sub-buckets, so
+ * any recorded value is reported within about 6% while the whole range up
+ * to Long.MAX_VALUE fits in under a thousand counters.  Recording is a
+ * single atomic increment; readers see a slightly stale but consistent
+ * enough view.
+ */
+public class LatencyHistogram {
+   private static final int SUB_BITS = 4;
+   private static final int SUB = 1 << SUB_BITS;
+   private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong _max = new AtomicLong();
+
+   /**
+    * Records one latency; negative values count as 0.
+    */
+   public void record (long nanos) {
+      long v = Math.max(nanos, 0);
+      this._counts.incrementAndGet(bucket(v));
+      long max = this._max.get();
+      while (v > max && !this._max.compareAndSet(max, v))
+         max = this._max.get();
+   }//end record
+
+   /**
+    * @return the number of recorded values
+    */
+   public long count () {
+      long total = 0;
+      for (int i = 0; i < BUCKETS; ++i)
+         total += this._counts.get(i);
+      return total;
+   }//end count
+
+   /**
+    * @return the largest recorded value
+    */
+   public long max () {
+      return this._max.get();
+   }
+
+   /**
+    * Returns several percentiles from a single pass over the buckets.
+    *
+    * @param ps the percentiles wanted, ascending, e.g. 0.5, 0.99
+    * @return the upper bound of the bucket holding each percentile, never
+    *         more than max(); 0 when nothing was recorded
+    */
+   public long[] percentiles (double... ps) {
+      long[] counts = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; ++i)
+         total += counts[i] = this._counts.get(i);
+      long[] result = new long[ps.length];
+      if (total == 0)
+         return result;
+      long max = max();
+      int next = 0;
+      long seen = 0;
+      for (int i = 0; i < BUCKETS && next < ps.length; ++i){
+         seen += counts[i];
+         while (next < ps.length && seen >= Math.max(1, (long) Math.ceil(ps[next] * total)))
+            result[next++] = Math.min(upperBound(i), max);
+      }//end for
+      while (next < ps.length)
+         result[next++] = max;
+      return result;
+   }//end percentiles
+
+   static int bucket (long v) {
+      if (v < SUB)
+         return (int) v;
+      int e = 63 - Long.numberOfLeadingZeros(v);
+      int sub = (int) (v >>> (e - SUB_BITS)) & (SUB - 1);
+      return (e - SUB_BITS + 1) * SUB + sub;
+   }//end bucket
+
+   static long upperBound (int bucket) {
+      if (bucket < SUB)
+         return bucket;
+      int shift = bucket / SUB - 1;
+      if (shift + SUB_BITS + 1 >= 63)
+         return Long.MAX_VALUE;
+      long lower = (long) (SUB + bucket % SUB) << shift;
+      return lower + (1L << shift) - 1;
+   }//end upperBound
+}//end LatencyHistogram
@@ -0,0 +1,153 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+
+/**
+ * Pages through a user's messages newest first using keyset pagination on
+ * (sendTime, msgId).  Each page is one index range scan that starts right
+ * after the last row shown, so deep pages cost the same as the first one
+ * and never pay for skipping rows with OFFSET.
+ *
+ * The selected columns must start with "msgId, <column>, sendTime".
+ */
+public class MessagePager {
+   public static final int PAGE_SIZE = Integer.getInteger("profnetwork.pageSize", 20);
+
+   // positions of the keyset columns in every row
+   private static final int MSG_ID = 0;
+   private static final int SEND_TIME = 2;
+
+   private final ProfNetwork _esql;
+   private final String _firstQuery;
+   private final String _olderQuery;
+   private final String _newerQuery;
+   private final Object[] _filterArgs;
+
+   private ResultTable _page = ResultTable.EMPTY;
+   private int _pageNumber = 0;
+
+   /**
+    * @param esql the database to read from
+    * @param columns the selected columns, starting with msgId, x, sendTime
+    * @param filter the WHERE condition selecting the messages to page over
+    * @param filterArgs the values bound to the placeholders of the filter
+    */
+   public MessagePager (ProfNetwork esql, String columns, String filter, Object... filterArgs) {
+      String select = "SELECT " + columns + " FROM Message WHERE " + filter;
+      this._esql = esql;
+      this._firstQuery = select + " ORDER BY sendTime DESC, msgId DESC LIMIT ?";
+      this._olderQuery = select + " AND (sendTime, msgId) < (CAST(? AS timestamp), ?) ORDER BY sendTime DESC, msgId DESC LIMIT ?";
+      // fetched oldest first so the scan starts at the key; shown newest first
+      this._newerQuery = "SELECT * FROM (" + select + " AND (sendTime, msgId) > (CAST(? AS timestamp), ?) " +
+         "ORDER BY sendTime ASC, msgId ASC LIMIT ?) newer ORDER BY sendTime DESC, msgId DESC";
+      this._filterArgs = filterArgs;
+   }//end MessagePager
+
+   /**
+    * @return a pager over the messages a user sent and has not deleted
+    */
+   public static MessagePager outbox (ProfNetwork esql, int usrNo) {
+      return new MessagePager(esql, "msgId, receiverNo, sendTime, status",
+         "senderNo = ? AND deleteStatus <> 1 AND deleteStatus <> 3", usrNo);
+   }//end outbox
+
+   /**
+    * @return a pager over the messages a user received and has not deleted
+    */
+   public static MessagePager inbox (ProfNetwork esql, int usrNo) {
+      return new MessagePager(esql, "msgId, senderNo, sendTime, status",
+         "receiverNo = ? AND deleteStatus <> 2 AND deleteStatus <> 3", usrNo);
+   }//end inbox
+
+   /**
+    * @return a pager over the messages between a user and another user
+    *         that the user has not deleted, with the sender and contents
+    */
+   public static MessagePager conversation (ProfNetwork esql, int usrNo, int otherNo) {
+      return new MessagePager(esql, "msgId, senderNo, sendTime, status, contents",
+         "LEAST(senderNo, receiverNo) = ? AND GREATEST(senderNo, receiverNo) = ? AND " +
+         "((senderNo = ? AND deleteStatus <> 1 AND deleteStatus <> 3) OR " +
+         " (receiverNo = ? AND deleteStatus <> 2 AND deleteStatus <> 3))",
+         Math.min(usrNo, otherNo), Math.max(usrNo, otherNo), usrNo, usrNo);
+   }//end conversation
+
+   /**
+    * @return the newest page of messages
+    */
+   public ResultTable first () throws SQLException {
+      this._page = this._esql.executeQueryAndReturnTable(this._firstQuery, args());
+      this._pageNumber = 1;
+      return this._page;
+   }//end first
+
+   /**
+    * Starts on a newest page fetched elsewhere, e.g. at login.
+    *
+    * @param page rows shaped like this pager's, newest first
+    * @return the page
+    */
+   public ResultTable first (ResultTable page) {
+      this._page = page;
+      this._pageNumber = 1;
+      return page;
+   }//end first
+
+   /**
+    * Moves to the page of older messages.  The current page is kept if
+    * there are none.
+    *
+    * @return the new page, or an empty page if this was the last page
+    */
+   public ResultTable next () throws SQLException {
+      if (this._page.isEmpty())
+         return this._page;
+      int last = this._page.rows() - 1;
+      ResultTable page = this._esql.executeQueryAndReturnTable(this._olderQuery,
+         args(this._page.getTimestamp(last, SEND_TIME), this._page.getInt(last, MSG_ID)));
+      if (page.isEmpty())
+         return page;
+      this._page = page;
+      ++this._pageNumber;
+      return page;
+   }//end next
+
+   /**
+    * Moves to the page of newer messages.  The current page is kept if
+    * there are none.
+    *
+    * @return the new page, or an empty page if this was the first page
+    */
+   public ResultTable previous () throws SQLException {
+      if (this._page.isEmpty())
+         return this._page;
+      ResultTable page = this._esql.executeQueryAndReturnTable(this._newerQuery,
+         args(this._page.getTimestamp(0, SEND_TIME), this._page.getInt(0, MSG_ID)));
+      if (page.isEmpty())
+         return page;
+      this._page = page;
+      this._pageNumber = Math.max(1, this._pageNumber - 1);
+      return page;
+   }//end previous
+
+   public ResultTable page () {
+      return this._page;
+   }
+
+   public int pageNumber () {
+      return this._pageNumber;
+   }
+
+   /**
+    * @return the filter arguments followed by the keyset and page size
+    */
+   private Object[] args (Object... key) {
+      Object[] args = new Object[this._filterArgs.length + key.length + 1];
+      System.arraycopy(this._filterArgs, 0, args, 0, this._filterArgs.length);
+      System.arraycopy(key, 0, args, this._filterArgs.length, key.length);
+      args[args.length - 1] = PAGE_SIZE;
+      return args;
+   }//end args
+}//end MessagePager
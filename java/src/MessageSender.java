@@ -0,0 +1,267 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Group-commit pipeline for sending messages.  Senders enqueue messages
+ * into a bounded queue and get a Future back; a single writer thread
+ * drains the queue into batches and commits each batch as one
+ * transaction.  The driver's executeBatch sends one statement per row, so
+ * a batch is written with multi-row INSERTs instead: one per power of two
+ * in its size, which keeps the round trips at about log2(maxBatch) and the
+ * statement texts few enough to stay cached.  A batch is written once it holds maxBatch messages or the
+ * oldest message has waited maxDelay, whichever comes first, so many
+ * concurrent senders share one commit (and one fsync) instead of paying
+ * for one each.
+ *
+ * A Future completes only after the transaction holding its message has
+ * committed, so a completed send is durable.
+ */
+public class MessageSender {
+   static final String INSERT =
+      "INSERT INTO Message(msgId, senderNo, receiverNo, contents, sendTime, deleteStatus, status) VALUES ";
+   static final String ROW = "(?, ?, ?, ?, ?, 0, 'Delivered')";
+
+   private final ConnectionPool _pool;
+   private final ArrayBlockingQueue<Pending> _queue;
+   private final int _maxBatch;
+   private final long _maxDelayNanos;
+   // INSERT of 2^i rows at [i]
+   private final String[] _inserts;
+   private final Thread _writer;
+   private volatile boolean _running = true;
+   // senders hold the read lock from checking _running until their message
+   // is queued, and close() takes the write lock to clear it, so nothing
+   // is queued after the writer thread could have seen the queue empty
+   private final ReentrantReadWriteLock _closing = new ReentrantReadWriteLock();
+
+   /**
+    * The result of a send: the message id once the message is committed.
+    */
+   public static class Receipt extends FutureTask<Integer> {
+      private static final Callable<Integer> NONE = new Callable<Integer>() {
+         public Integer call () {
+            return null;
+         }
+      };
+
+      Receipt () {
+         super(NONE);
+      }
+
+      void complete (int msgId) {
+         set(msgId);
+      }
+
+      void fail (Throwable cause) {
+         setException(cause);
+      }
+   }//end Receipt
+
+   private static class Pending {
+      final int msgId;
+      final int sender;
+      final int receiver;
+      final String contents;
+      final Timestamp sendTime;
+      final Receipt receipt = new Receipt();
+
+      Pending (int msgId, int sender, int receiver, String contents, Timestamp sendTime) {
+         this.msgId = msgId;
+         this.sender = sender;
+         this.receiver = receiver;
+         this.contents = contents;
+         this.sendTime = sendTime;
+      }
+   }//end Pending
+
+   /**
+    * Starts the writer thread.
+    *
+    * @param pool the connections batches are written with
+    * @param capacity the maximum number of queued messages
+    * @param maxBatch the maximum number of messages per transaction
+    * @param maxDelayMillis how long the first message of a batch may wait
+    */
+   public MessageSender (ConnectionPool pool, int capacity, int maxBatch, long maxDelayMillis) {
+      this._pool = pool;
+      this._queue = new ArrayBlockingQueue<Pending>(capacity);
+      this._maxBatch = maxBatch;
+      this._maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+      this._inserts = new String[32 - Integer.numberOfLeadingZeros(Math.max(1, maxBatch))];
+      String rows = ROW;
+      for (int i = 0; i < this._inserts.length; ++i){
+         this._inserts[i] = INSERT + rows;
+         rows = rows + ", " + rows;
+      }//end for
+      this._writer = new Thread(new Runnable() {
+         public void run () {
+            writeLoop();
+         }
+      }, "message-sender");
+      this._writer.setDaemon(true);
+      this._writer.start();
+   }//end MessageSender
+
+   /**
+    * Queues a message, blocking while the queue is full.
+    *
+    * @param sender the userNo of the sender
+    * @param receiver the userNo of the receiver
+    * @return a future completing with msgId once the message is committed
+    * @throws java.lang.InterruptedException when interrupted while waiting
+    */
+   public Future<Integer> send (int msgId, int sender, int receiver, String contents) throws InterruptedException {
+      Pending pending = new Pending(msgId, sender, receiver, contents, new Timestamp(System.currentTimeMillis()));
+      this._closing.readLock().lock();
+      try{
+         if (!this._running)
+            throw new IllegalStateException("Message sender is closed");
+         this._queue.put(pending);
+      }finally{
+         this._closing.readLock().unlock();
+      }//end try
+      return pending.receipt;
+   }//end send
+
+   /**
+    * Writes whatever is still queued and stops the writer thread.
+    */
+   public void close () {
+      // waits for senders blocked on a full queue; the writer keeps
+      // draining it meanwhile
+      this._closing.writeLock().lock();
+      try{
+         this._running = false;
+      }finally{
+         this._closing.writeLock().unlock();
+      }//end try
+      try{
+         this._writer.join();
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+   }//end close
+
+   private void writeLoop () {
+      List<Pending> batch = new ArrayList<Pending>(this._maxBatch);
+      while (this._running || !this._queue.isEmpty()){
+         try{
+            Pending first = this._queue.poll(100, TimeUnit.MILLISECONDS);
+            if (first == null)
+               continue;
+            batch.add(first);
+            long deadline = System.nanoTime() + this._maxDelayNanos;
+            while (batch.size() < this._maxBatch){
+               // take what is already queued, then wait out the delay
+               if (this._queue.drainTo(batch, this._maxBatch - batch.size()) > 0)
+                  continue;
+               long wait = deadline - System.nanoTime();
+               Pending next = wait > 0 ? this._queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+               if (next == null)
+                  break;
+               batch.add(next);
+            }//end while
+            write(batch);
+         }catch (InterruptedException e){
+            // write what was collected, and keep draining until closed.
+            write(batch);
+         }finally{
+            // never leave a sender of this batch waiting, whatever stopped it
+            for (Pending p : batch)
+               if (!p.receipt.isDone())
+                  p.receipt.fail(new IllegalStateException("Message was not written"));
+            batch.clear();
+         }//end try
+      }//end while
+   }//end writeLoop
+
+   /**
+    * Writes a batch in one transaction.  If the batch fails, each message
+    * is retried on its own so one bad message does not fail the others.
+    */
+   private void write (List<Pending> batch) {
+      try{
+         insert(batch);
+         for (Pending p : batch)
+            p.receipt.complete(p.msgId);
+      }catch (SQLException batchFailure){
+         if (batch.size() == 1){
+            batch.get(0).receipt.fail(batchFailure);
+            return;
+         }//end if
+         for (Pending p : batch){
+            try{
+               insert(Collections.singletonList(p));
+               p.receipt.complete(p.msgId);
+            }catch (SQLException e){
+               p.receipt.fail(e);
+            }//end try
+         }//end for
+      }catch (RuntimeException e){
+         // never leave a sender waiting; completed receipts ignore this
+         for (Pending p : batch)
+            p.receipt.fail(e);
+      }//end try
+   }//end write
+
+   private void insert (List<Pending> batch) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      int statements = 0;
+      try{
+         conn.connection.setAutoCommit(false);
+         String sql = null;
+         try{
+            // the largest power of two that fits first, then the next
+            for (int from = 0; from < batch.size(); ){
+               int log = 31 - Integer.numberOfLeadingZeros(batch.size() - from);
+               int rows = 1 << log;
+               sql = this._inserts[log];
+               PreparedStatement stmt = conn.prepare(sql);
+               for (int r = 0; r < rows; ++r){
+                  Pending p = batch.get(from + r);
+                  stmt.setInt(5 * r + 1, p.msgId);
+                  stmt.setInt(5 * r + 2, p.sender);
+                  stmt.setInt(5 * r + 3, p.receiver);
+                  stmt.setString(5 * r + 4, p.contents);
+                  stmt.setTimestamp(5 * r + 5, p.sendTime);
+               }//end for
+               ++statements;
+               stmt.executeUpdate();
+               from += rows;
+            }//end for
+            conn.connection.commit();
+         }catch (SQLException e){
+            try{
+               conn.connection.rollback();
+            }catch (SQLException ignored){
+               // ignored.
+            }//end try
+            if (sql != null)
+               conn.statements.evict(sql);
+            throw e;
+         }finally{
+            conn.connection.setAutoCommit(true);
+         }//end try
+      }finally{
+         this._pool.release(conn);
+         // every INSERT and the commit
+         Metrics.call(start, statements + 1);
+      }//end try
+   }//end insert
+}//end MessageSender
@@ -0,0 +1,201 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and round-trip statistics per user action.  A menu action is
+ * bracketed with begin()/end(); every JDBC call made on that thread in
+ * between is recorded against the action, so the report shows both how
+ * long an action takes and how many round trips it costs.  Time spent
+ * waiting for the user to type is not counted.  Calls made outside any
+ * action (background threads, startup) are recorded under BACKGROUND.
+ */
+public class Metrics {
+   static final String BACKGROUND = "(background)";
+
+   private static final ConcurrentHashMap<String, Operation> OPERATIONS = new ConcurrentHashMap<String, Operation>();
+   private static final ThreadLocal<Action> CURRENT = new ThreadLocal<Action>();
+   private static ScheduledExecutorService _dumper = null;
+
+   /**
+    * The statistics of one kind of action.
+    */
+   public static class Operation {
+      public final String name;
+      // whole actions, excluding waits for input
+      public final LatencyHistogram actions = new LatencyHistogram();
+      // every JDBC call the actions made
+      public final LatencyHistogram calls = new LatencyHistogram();
+      public final AtomicLong roundTrips = new AtomicLong();
+
+      Operation (String name) {
+         this.name = name;
+      }
+   }//end Operation
+
+   /**
+    * One running action; actions nest, e.g. reading a message inside
+    * ViewMessage.
+    */
+   public static class Action {
+      final Operation op;
+      final Action parent;
+      final long start = System.nanoTime();
+      long idle = 0;
+
+      Action (Operation op, Action parent) {
+         this.op = op;
+         this.parent = parent;
+      }
+   }//end Action
+
+   /**
+    * @return the statistics of an operation, created on first use
+    */
+   public static Operation operation (String name) {
+      Operation op = OPERATIONS.get(name);
+      if (op == null){
+         Operation created = new Operation(name);
+         op = OPERATIONS.putIfAbsent(name, created);
+         if (op == null)
+            op = created;
+      }//end if
+      return op;
+   }//end operation
+
+   /**
+    * Starts an action on the calling thread; JDBC calls are recorded
+    * against it until end() is called.
+    */
+   public static Action begin (String name) {
+      Action action = new Action(operation(name), CURRENT.get());
+      CURRENT.set(action);
+      return action;
+   }//end begin
+
+   /**
+    * Ends an action and records its latency.
+    */
+   public static void end (Action action) {
+      action.op.actions.record(System.nanoTime() - action.start - action.idle);
+      if (action.parent == null)
+         CURRENT.remove();
+      else
+         CURRENT.set(action.parent);
+   }//end end
+
+   /**
+    * Marks the start of a wait for user input.
+    *
+    * @return the token to pass to resume()
+    */
+   public static long pause () {
+      return System.nanoTime();
+   }
+
+   /**
+    * Marks the end of a wait for user input, excluding it from the
+    * running actions.
+    */
+   public static void resume (long pausedAt) {
+      long idle = System.nanoTime() - pausedAt;
+      for (Action a = CURRENT.get(); a != null; a = a.parent)
+         a.idle += idle;
+   }//end resume
+
+   /**
+    * Records a finished JDBC call against the running action.
+    *
+    * @param start System.nanoTime() when the call started
+    * @param roundTrips the number of server round trips it took
+    */
+   public static void call (long start, int roundTrips) {
+      long elapsed = System.nanoTime() - start;
+      Action action = CURRENT.get();
+      Operation op = action == null ? operation(BACKGROUND) : action.op;
+      op.calls.record(elapsed);
+      op.roundTrips.addAndGet(roundTrips);
+   }//end call
+
+   /**
+    * @return a table of every operation: action count, round trips per
+    *         action, and p50/p99/p999/max of actions and of single calls
+    */
+   public static String report () {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("%-24s %8s %8s %36s %9s %36s%n", "operation", "actions", "trips",
+         "action p50/p99/p999/max ms", "calls", "call p50/p99/p999/max ms"));
+      for (Operation op : new TreeMap<String, Operation>(OPERATIONS).values()){
+         long actions = op.actions.count();
+         long trips = op.roundTrips.get();
+         sb.append(String.format("%-24s %8d %8s %36s %9d %36s%n", op.name, actions,
+            actions == 0 ? "-" : String.format("%.1f", (double) trips / actions),
+            summary(op.actions), op.calls.count(), summary(op.calls)));
+      }//end for
+      return sb.toString();
+   }//end report
+
+   private static String summary (LatencyHistogram h) {
+      long[] p = h.percentiles(0.50, 0.99, 0.999);
+      return String.format("%.2f/%.2f/%.2f/%.2f", p[0] / 1e6, p[1] / 1e6, p[2] / 1e6, h.max() / 1e6);
+   }//end summary
+
+   /**
+    * Appends the report to a file every intervalSeconds, until stopDump().
+    */
+   public static synchronized void startDump (final String file, long intervalSeconds) {
+      if (_dumper != null)
+         return;
+      _dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread (Runnable r) {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      _dumper.scheduleAtFixedRate(new Runnable() {
+         public void run () {
+            dump(file);
+         }
+      }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+   }//end startDump
+
+   /**
+    * Stops the periodic dump, writing the report one last time.
+    */
+   public static synchronized void stopDump (String file) {
+      if (_dumper == null)
+         return;
+      _dumper.shutdownNow();
+      _dumper = null;
+      dump(file);
+   }//end stopDump
+
+   private static void dump (String file) {
+      try{
+         PrintWriter w = new PrintWriter(new FileWriter(file, true));
+         try{
+            w.println("== " + new Date());
+            w.print(report());
+            w.println();
+         }finally{
+            w.close();
+         }//end try
+      }catch (IOException e){
+         System.err.println("Unable to write statistics to " + file + ": " + e.getMessage());
+      }//end try
+   }//end dump
+}//end Metrics
@@ -0,0 +1,220 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory trigram index over USR.name and USR.userId for prefix and
+ * fuzzy people search.  Every word is padded the way pg_trgm pads it
+ * ("  word "), so the first trigrams of a word double as a prefix index:
+ * typing "jo" already matches every word starting with "jo".
+ *
+ * Results are ranked by trigram similarity, with a boost for names and ids
+ * that start with the query, and only the top k are kept.
+ */
+public class PeopleIndex {
+   // candidates less similar than this are dropped unless they are a prefix match
+   private static final float MIN_SIMILARITY = 0.2f;
+   private static final float PREFIX_BOOST = 1.0f;
+
+   private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+   private final ArrayList<String[]> _users = new ArrayList<String[]>();
+   private final ArrayList<String> _keys = new ArrayList<String>();
+   private int[] _gramCounts = new int[1024];
+   private final HashMap<String, Integer> _docs = new HashMap<String, Integer>();
+   private final HashMap<String, int[]> _postings = new HashMap<String, int[]>();
+
+   // score accumulators indexed by document, borrowed by one search at a
+   // time; searches beyond the pool's size allocate their own
+   private final ArrayBlockingQueue<int[]> _scratch =
+      new ArrayBlockingQueue<int[]>(Math.max(1, ProfNetwork.SCRATCH_POOL_SIZE));
+
+   /**
+    * Builds the index over every user in the database.
+    *
+    * @param esql the database to read USR from
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static PeopleIndex load (ProfNetwork esql) throws SQLException {
+      final PeopleIndex index = new PeopleIndex();
+      esql.executeQueryAndVisit(new RowVisitor() {
+         public void visit (ResultSet row) throws SQLException {
+            index.add(row.getString(1), row.getString(2), row.getString(3));
+         }
+      }, "SELECT userId, name, email FROM USR");
+      return index;
+   }//end load
+
+   /**
+    * Adds a user to the index; users already indexed are ignored.
+    */
+   public void add (String userId, String name, String email) {
+      userId = userId.trim();
+      name = name == null ? "" : name.trim();
+      email = email == null ? "" : email.trim();
+      this._lock.writeLock().lock();
+      try{
+         if (this._docs.containsKey(userId))
+            return;
+         int doc = this._users.size();
+         this._docs.put(userId, doc);
+         this._users.add(new String[] { name, userId, email });
+         this._keys.add(name.toLowerCase() + '\n' + userId.toLowerCase());
+
+         HashSet<String> grams = trigrams(name + ' ' + userId, false);
+         if (doc == this._gramCounts.length)
+            this._gramCounts = Arrays.copyOf(this._gramCounts, doc * 2);
+         this._gramCounts[doc] = grams.size();
+         for (String gram : grams){
+            int[] posting = this._postings.get(gram);
+            // slot 0 holds the length; documents are appended in id order
+            if (posting == null)
+               posting = new int[4];
+            else if (posting[0] + 1 == posting.length)
+               posting = Arrays.copyOf(posting, posting.length * 2);
+            posting[++posting[0]] = doc;
+            this._postings.put(gram, posting);
+         }//end for
+      }finally{
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end add
+
+   /**
+    * Finds the users best matching a (partial) name or user id.
+    *
+    * @param query the text typed by the user
+    * @param limit the maximum number of results
+    * @return {name, userId, email} of the best matches, best first
+    */
+   public List<String[]> search (String query, int limit) {
+      String needle = query.trim().toLowerCase();
+      HashSet<String> grams = trigrams(needle, true);
+      List<String[]> result = new ArrayList<String[]>();
+      if (grams.isEmpty() || limit <= 0)
+         return result;
+
+      this._lock.readLock().lock();
+      try{
+         int n = this._users.size();
+         int[] shared = this._scratch.poll();
+         if (shared == null || shared.length < n)
+            shared = new int[Math.max(n + (n >> 4), 1024)];
+
+         // count the trigrams every candidate shares with the query
+         int[] touched = new int[64];
+         int numTouched = 0;
+         for (String gram : grams){
+            int[] posting = this._postings.get(gram);
+            if (posting == null)
+               continue;
+            for (int i = 1; i <= posting[0]; ++i){
+               int doc = posting[i];
+               if (shared[doc]++ == 0){
+                  if (numTouched == touched.length)
+                     touched = Arrays.copyOf(touched, numTouched * 2);
+                  touched[numTouched++] = doc;
+               }//end if
+            }//end for
+         }//end for
+
+         // keep the best `limit` candidates in a min-heap on score
+         final float[] score = new float[numTouched];
+         PriorityQueue<Integer> top = new PriorityQueue<Integer>(limit + 1, new Comparator<Integer>() {
+            public int compare (Integer a, Integer b) {
+               return Float.compare(score[a], score[b]);
+            }
+         });
+         for (int i = 0; i < numTouched; ++i){
+            int doc = touched[i];
+            int common = shared[doc];
+            shared[doc] = 0;
+            float similarity = (float) common / (grams.size() + this._gramCounts[doc] - common);
+            boolean prefix = isPrefixMatch(this._keys.get(doc), needle);
+            if (similarity < MIN_SIMILARITY && !prefix)
+               continue;
+            score[i] = similarity + (prefix ? PREFIX_BOOST : 0);
+            top.add(i);
+            if (top.size() > limit)
+               top.poll();
+         }//end for
+
+         // every touched entry is back to 0
+         this._scratch.offer(shared);
+
+         while (!top.isEmpty())
+            result.add(this._users.get(touched[top.poll()]));
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+      // the heap yields the worst match first
+      Collections.reverse(result);
+      return result;
+   }//end search
+
+   /**
+    * @return the number of indexed users
+    */
+   public int size () {
+      this._lock.readLock().lock();
+      try{
+         return this._users.size();
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end size
+
+   /**
+    * @return true if the name, any word of the name, or the user id starts
+    *         with the query
+    */
+   private static boolean isPrefixMatch (String key, String needle) {
+      int nl = key.indexOf('\n');
+      if (key.startsWith(needle) || key.startsWith(needle, nl + 1))
+         return true;
+      for (int i = key.indexOf(' '); i >= 0 && i < nl; i = key.indexOf(' ', i + 1))
+         if (key.startsWith(needle, i + 1))
+            return true;
+      return false;
+   }//end isPrefixMatch
+
+   /**
+    * Splits text into lower-cased alphanumeric words and returns the
+    * trigrams of every word padded with two leading and one trailing blank.
+    * For a query, the "  x" trigram of words longer than one letter is left
+    * out: it is implied by the " xy" trigram and its posting list (every
+    * word starting with x) is by far the longest one to scan.
+    */
+   static HashSet<String> trigrams (String text, boolean query) {
+      HashSet<String> grams = new HashSet<String>();
+      StringBuilder word = new StringBuilder("  ");
+      for (int i = 0; i <= text.length(); ++i){
+         char c = i < text.length() ? Character.toLowerCase(text.charAt(i)) : ' ';
+         if (Character.isLetterOrDigit(c)){
+            word.append(c);
+            continue;
+         }//end if
+         if (word.length() > 2){
+            word.append(' ');
+            int first = query && word.length() > 4 ? 1 : 0;
+            for (int j = first; j + 3 <= word.length(); ++j)
+               grams.add(word.substring(j, j + 3));
+         }//end if
+         word.setLength(2);
+      }//end for
+      return grams;
+   }//end trigrams
+}//end PeopleIndex
@@ -15,21 +15,20 @@
  * Hamza Syned - 8620978775
  *
  */
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.io.File;
+import java.io.IOException;
 import java.io.FileReader;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.ArrayList;
-import java.text.SimpleDateFormat;  
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.Date;  
-import java.util.Calendar;
 /**
  * This class defines a simple embedded SQL utility class that is designed to
  * work with PostgreSQL JDBC drivers.
@@ -38,14 +37,127 @@ import java.util.Calendar;
 
 
 public class ProfNetwork {
-   public static String gUsr;
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections, each with its own cache of
+   // prepared statements.
+   private ConnectionPool _pool = null;
+   // group-commit pipeline all new messages are written through
+   static final int SEND_QUEUE_SIZE = Integer.getInteger("profnetwork.sendQueueSize", 10000);
+   static final int SEND_BATCH_SIZE = Integer.getInteger("profnetwork.sendBatchSize", 100);
+   static final int SEND_MAX_DELAY_MS = Integer.getInteger("profnetwork.sendMaxDelayMs", 5);
+   // started on the first send, so tools that never send run no writer
+   private volatile MessageSender _sender = null;
+   private final ReentrantLock _senderLock = new ReentrantLock();
+
+   // message ids are reserved from msg_id_seq in blocks of MSG_ID_BLOCK;
+   // this must match the sequence's INCREMENT BY in create_tables.sql
+   static final int MSG_ID_BLOCK = 1000;
+   private final IdAllocator _msgIds = new IdAllocator(this, "msg_id_seq", MSG_ID_BLOCK);
+
+   // connection requests may only be sent within this many levels (1-3)
+   static final int CONNECTION_LEVELS =
+      Math.max(1, Math.min(3, Integer.getInteger("profnetwork.connectionLevels", 3)));
+   // "memory" answers CheckConnection from the in-memory graph, "server"
+   // with one recursive query for deployments that can't hold the graph
+   static final boolean SERVER_GRAPH = "server".equals(System.getProperty("profnetwork.graphMode", "memory"));
+   // login names <-> userNo surrogate keys, looked up once per name
+   private final UserDirectory _users = new UserDirectory(this);
+   // accepted connections, loaded on first use and dropped when they change
+   private volatile SocialGraph _graph = null;
+   // held while the graph is loaded or replaced; a lock rather than a
+   // monitor, so a virtual thread waiting on the load is not pinned
+   private final ReentrantLock _graphLock = new ReentrantLock();
+   // binary snapshot file the graph is mapped from, if any; written on
+   // first use when missing, then only the rows after it are read
+   static final String GRAPH_SNAPSHOT = System.getProperty("profnetwork.graphSnapshot");
+   private GraphSnapshot _snapshot = null;
+   // connection changes of every process are polled from CONNECTION_CHANGES
+   // this often and applied to the graph and friend cache
+   static final int CHANGE_POLL_MS = Integer.getInteger("profnetwork.changePollMs", 1000);
+   static final int CHANGE_GAP_TIMEOUT_MS = Integer.getInteger("profnetwork.changeGapTimeoutMs", 10000);
+   private final ChangeFeed _changes = new ChangeFeed(this, CHANGE_POLL_MS, CHANGE_GAP_TIMEOUT_MS);
+   // background upkeep of the MESSAGE partitions and archive: how often,
+   // how many rows per batch and how long to rest between batches, and how
+   // many months of partitions to create ahead.  Message retention is off
+   // unless profnetwork.messageRetentionMonths is set: messages older than
+   // that many months are then removed from every mailbox for good
+   static final int ARCHIVE_INTERVAL_SEC = Integer.getInteger("profnetwork.archiveIntervalSec", 600);
+   static final int ARCHIVE_BATCH_SIZE = Integer.getInteger("profnetwork.archiveBatchSize", 500);
+   static final int ARCHIVE_PAUSE_MS = Integer.getInteger("profnetwork.archivePauseMs", 100);
+   static final int ARCHIVE_MONTHS_AHEAD = Integer.getInteger("profnetwork.archiveMonthsAhead", 2);
+   static final int MESSAGE_RETENTION_MONTHS = Integer.getInteger("profnetwork.messageRetentionMonths", 0);
+   private final Archiver _archiver = new Archiver(this, ARCHIVE_INTERVAL_SEC * 1000L, ARCHIVE_BATCH_SIZE,
+      ARCHIVE_PAUSE_MS, ARCHIVE_MONTHS_AHEAD, MESSAGE_RETENTION_MONTHS);
+   // recently viewed friend lists, invalidated when connections change
+   static final int FRIEND_CACHE_SIZE = Integer.getInteger("profnetwork.friendCacheSize", 1024);
+   private final FriendCache _friends = new FriendCache(this, FRIEND_CACHE_SIZE);
+   // trigram index over user names and ids, built on the first search
+   static final int SEARCH_LIMIT = Integer.getInteger("profnetwork.searchLimit", 10);
+   private PeopleIndex _people = null;
+   // held while the people index or the recommender is loaded
+   private final ReentrantLock _indexLock = new ReentrantLock();
+   static final int MESSAGE_SEARCH_LIMIT = Integer.getInteger("profnetwork.messageSearchLimit", 20);
+   // "people you may know": how many to show, and what a shared company
+   // or institution is worth in mutual connections
+   static final int RECOMMEND_LIMIT = Integer.getInteger("profnetwork.recommendLimit", 10);
+   static final float RECOMMEND_BOOST = Float.parseFloat(System.getProperty("profnetwork.recommendBoost", "0.5"));
+   // companies and institutions are reread this often, so edits to
+   // WORK_EXPR and EDUCATIONAL_DETAILS reach the boost
+   static final int RECOMMEND_REFRESH_SEC = Integer.getInteger("profnetwork.recommendRefreshSec", 600);
+   private Recommender _recommender = null;
+   private long _recommenderLoadedAt = 0;
+
+   // number of physical connections and cached statements per connection
+   static final int POOL_SIZE = Integer.getInteger("profnetwork.poolSize", 4);
+   // scratch areas of graph and people searches kept for reuse; searches
+   // beyond that many at once allocate their own
+   static final int SCRATCH_POOL_SIZE =
+      Integer.getInteger("profnetwork.scratchPoolSize", Runtime.getRuntime().availableProcessors());
+   static final int STATEMENT_CACHE_SIZE = Integer.getInteger("profnetwork.statementCacheSize", 64);
+   // rows fetched per cursor round trip (and printed per flush)
+   static final int FETCH_SIZE = Integer.getInteger("profnetwork.fetchSize", 500);
+   // large results are read through an explicit cursor, since the driver
+   // does not implement setFetchSize
+   static final String FETCH = "FETCH FORWARD " + FETCH_SIZE + " FROM result_cursor";
+   // file the per-action latency statistics are appended to, if any, and
+   // how often
+   static final String STATS_FILE = System.getProperty("profnetwork.statsFile");
+   static final int STATS_INTERVAL_SEC = Integer.getInteger("profnetwork.statsIntervalSec", 60);
+
+   // the action names statistics are recorded under, by menu choice
+   static final String[] MAIN_ACTIONS = { null, "CreateUser", "LogIn" };
+   static final String[] USER_ACTIONS = { null, "NewMessage", "ViewMessage", "ChangePassword",
+      "SearchPeople", "SendRequest", "ViewConnectionRequest", "ChangeConnection", "ViewFriends",
+      "ViewFriendsProfile", "LogOut", "ViewStatistics", "PeopleYouMayKnow" };
+   static final String[] MESSAGE_ACTIONS = { null, "ViewMessage.sent", "ViewMessage.received",
+      "ViewMessage.read", "ViewMessage.delete", "ViewMessage.markAllRead", "ViewMessage.deleteSelected",
+      "ViewMessage.search" };
+
+   // keyboard input and screen output go through the Session bound to the
+   // current thread: the console, or one client connection in server mode
+   static PrintStream out() {
+      return Session.current().out;
+   }
+
+   static PrintStream err() {
+      return Session.current().err;
+   }
+
+   static String readLine() throws IOException {
+      // time spent waiting for the user is not part of any action
+      long pausedAt = Metrics.pause();
+      try{
+         return Session.current().readLine();
+      }finally{
+         Metrics.resume(pausedAt);
+      }//end try
+   }
 
-   // handling the keyboard inputs through a BufferedReader
-   // This variable can be global for convenience.
-   static BufferedReader in = new BufferedReader(
-                                new InputStreamReader(System.in));
+   /**
+    * @return the action name of a menu choice
+    */
+   static String actionName(String[] names, int choice) {
+      return choice > 0 && choice < names.length && names[choice] != null ? names[choice] : "Menu";
+   }
 
    /**
     * Creates a new instance of ProfNetwork
@@ -58,145 +170,479 @@ public class ProfNetwork {
     */
    public ProfNetwork (String dbname, String dbport, String user, String passwd) throws SQLException {
 
-      System.out.print("Connecting to database...");
+      out().print("Connecting to database...");
       try{
          // constructs the connection URL
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-         System.out.println ("Connection URL: " + url + "\n");
+         out().println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
-         System.out.println("Done");
+         // obtain a first physical connection up front so a bad URL or
+         // login fails here rather than on the first menu action
+         this._pool = new ConnectionPool(url, user, passwd, POOL_SIZE, STATEMENT_CACHE_SIZE);
+         this._pool.release(this._pool.acquire());
+         out().println("Done");
       }catch (Exception e){
-         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
-         System.out.println("Make sure you started postgres on this machine");
+         err().println("Error - Unable to Connect to Database: " + e.getMessage() );
+         out().println("Make sure you started postgres on this machine");
          System.exit(-1);
       }//end catch
    }//end ProfNetwork
 
+   /**
+    * Starts the background services of the interactive application: the
+    * connection change feed, the message archiver (whose first pass runs
+    * at once) and the statistics dump.  Only main calls this, so the one
+    * shot tools (Archiver, GraphSnapshot, Recommender, the benchmarks)
+    * never archive or delete anything as a side effect.
+    *
+    * @throws java.sql.SQLException when the change log cannot be read
+    */
+   public void startServices() throws SQLException {
+      this._changes.start();
+      this._archiver.start();
+      if (STATS_FILE != null)
+         Metrics.startDump(STATS_FILE, STATS_INTERVAL_SEC);
+   }//end startServices
+
+   /**
+    * Binds positional arguments to the '?' placeholders of a statement.
+    */
+   private static void bind (PreparedStatement stmt, Object[] args) throws SQLException {
+      for (int i = 0; i < args.length; ++i){
+         if (args[i] == null)
+            stmt.setNull(i + 1, Types.VARCHAR);
+         else
+            stmt.setObject(i + 1, args[i]);
+      }//end for
+   }//end bind
+
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
     *
-    * @param sql the input SQL string
+    * @param sql the input SQL template with '?' placeholders
+    * @param args the values bound to the placeholders
+    * @return the number of rows affected
     * @throws java.sql.SQLException when update failed
     */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+   public int executeUpdate (String sql, Object... args) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         // looks up (or prepares) the statement and binds the arguments
+         PreparedStatement stmt = conn.prepare(sql);
+         bind(stmt, args);
 
-      // close the instruction
-      stmt.close ();
+         // issues the update instruction
+         return stmt.executeUpdate ();
+      }catch (SQLException e){
+         // the statement may have failed in its server-side PREPARE
+         conn.statements.evict(sql);
+         throw e;
+      }finally{
+         this._pool.release(conn);
+         Metrics.call(start, 1);
+      }//end try
    }//end executeUpdate
 
+   /**
+    * Method to execute several update SQL statements as one transaction,
+    * so either all of them take effect or none does, and other sessions
+    * see the state before them until the commit.
+    *
+    * @param statements the SQL statements, without placeholders
+    * @return the number of rows each statement affected
+    * @throws java.sql.SQLException when a statement failed; the ones
+    *         before it are rolled back
+    */
+   public int[] executeTransaction (String... statements) throws SQLException {
+      long start = System.nanoTime();
+      String sql = null;
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      boolean autoCommit = conn.connection.getAutoCommit();
+      try{
+         conn.connection.setAutoCommit(false);
+         int[] counts = new int[statements.length];
+         for (int i = 0; i < statements.length; ++i){
+            sql = statements[i];
+            counts[i] = conn.prepare(sql).executeUpdate ();
+         }//end for
+         conn.connection.commit();
+         return counts;
+      }catch (SQLException e){
+         rollback(conn);
+         if (sql != null)
+            conn.statements.evict(sql);
+         throw e;
+      }finally{
+         try{
+            conn.connection.setAutoCommit(autoCommit);
+         }finally{
+            this._pool.release(conn);
+            // every statement and the commit
+            Metrics.call(start, statements.length + 1);
+         }//end try
+      }//end try
+   }//end executeTransaction
+
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and outputs the results to
     * standard out.
     *
-    * @param query the input query string
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+   public int executeQueryAndPrintResult (String query, Object... args) throws SQLException {
+      return executeQueryAndPrintResult(0, query, args);
+   }//end executeQueryAndPrintResult
 
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * stream at most limit rows of the result to standard out.  The rows
+    * of a SELECT are read through a DECLAREd cursor FETCH_SIZE rows at a
+    * time, so memory stays bounded however large the result is.  Other
+    * statements returning rows (UPDATE ... RETURNING) cannot run in a
+    * cursor and are read in one go.
+    *
+    * @param limit the maximum number of rows printed, 0 for all
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (int limit, String query, Object... args) throws SQLException {
+      long start = System.nanoTime();
       int rowCount = 0;
+      int fetches = 0;
+      boolean cursor = query.trim().regionMatches(true, 0, "SELECT", 0, 6);
+      String sql = cursor ? "DECLARE result_cursor NO SCROLL CURSOR FOR " + query : query;
+      ResultPrinter printer = Session.current().printer;
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      boolean autoCommit = conn.connection.getAutoCommit();
+      try{
+         // a cursor only lives as long as its transaction
+         conn.connection.setAutoCommit(false);
+         PreparedStatement stmt = conn.prepare(sql);
+         bind(stmt, args);
+         if (!cursor){
+            ResultSet rs = stmt.executeQuery ();
+            rowCount = printer.print(rs, limit);
+            rs.close ();
+         }else{
+            stmt.execute ();
+            // fetches and prints a batch at a time until the rows or the
+            // limit run out
+            PreparedStatement fetch = conn.prepare(FETCH);
+            int printed;
+            do{
+               ResultSet rs = fetch.executeQuery ();
+               ++fetches;
+               printed = printer.print(rs, limit > 0 ? limit - rowCount : 0, rowCount);
+               rs.close ();
+               rowCount += printed;
+            }while (printed == FETCH_SIZE && (limit <= 0 || rowCount < limit));
+         }//end if
+         conn.connection.commit();
+         return rowCount;
+      }catch (IOException e){
+         rollback(conn);
+         throw new SQLException("Unable to print result: " + e.getMessage(), e);
+      }catch (SQLException e){
+         rollback(conn);
+         conn.statements.evict(sql);
+         throw e;
+      }finally{
+         try{
+            conn.connection.setAutoCommit(autoCommit);
+         }finally{
+            this._pool.release(conn);
+            // the statement, every FETCH and the commit
+            Metrics.call(start, 2 + fetches);
+         }//end try
+      }//end try
+   }//end executeQueryAndPrintResult
 
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-	 if(outputHeader){
-	    for(int i = 1; i <= numCol; i++){
-		System.out.print(rsmd.getColumnName(i) + "\t");
-	    }
-	    System.out.println();
-	    outputHeader = false;
-	 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close ();
-      return rowCount;
-   }//end executeQuery
+   /**
+    * Rolls back the open transaction of a connection, ignoring failures.
+    */
+   private static void rollback (ConnectionPool.Pooled conn) {
+      try{
+         conn.connection.rollback();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end rollback
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the results as
     * a list of records. Each record in turn is a list of attribute values
     *
-    * @param query the input query string
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
     * @return the query result as a list of records
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... args) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         PreparedStatement stmt = conn.prepare(query);
+         bind(stmt, args);
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery ();
+
+         /*
+          ** obtains the metadata object for the returned result set.  The metadata
+          ** contains row and column info.
+          */
+         ResultSetMetaData rsmd = rs.getMetaData ();
+         int numCol = rsmd.getColumnCount ();
+
+         // iterates through the result set and saves the data returned by the query.
+         List<List<String>> result  = new ArrayList<List<String>>();
+         while (rs.next()){
+            List<String> record = new ArrayList<String>(numCol);
+            for (int i=1; i<=numCol; ++i)
+               record.add(rs.getString (i));
+            result.add(record);
+         }//end while
+         rs.close ();
+         return result;
+      }catch (SQLException e){
+         // the statement may have failed in its server-side PREPARE
+         conn.statements.evict(query);
+         throw e;
+      }finally{
+         this._pool.release(conn);
+         Metrics.call(start, 1);
+      }//end try
+   }//end executeQueryAndReturnResult
 
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * return the result stored by column, with numbers and timestamps in
+    * primitive arrays and strings trimmed and pooled.
+    *
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
+    * @return the query result
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ResultTable executeQueryAndReturnTable (String query, Object... args) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         PreparedStatement stmt = conn.prepare(query);
+         bind(stmt, args);
+         ResultSet rs = stmt.executeQuery ();
+         ResultTable result = ResultTable.read(rs);
+         rs.close ();
+         return result;
+      }catch (SQLException e){
+         // the statement may have failed in its server-side PREPARE
+         conn.statements.evict(query);
+         throw e;
+      }finally{
+         this._pool.release(conn);
+         Metrics.call(start, 1);
+      }//end try
+   }//end executeQueryAndReturnTable
 
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * hand every row to a visitor without keeping any of them.  The rows
+    * are read through a DECLAREd cursor FETCH_SIZE rows at a time, so
+    * memory stays bounded however large the result is; the query must
+    * therefore be a SELECT.
+    *
+    * @param visitor receives each row in turn
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
+    * @return the number of rows visited
+    * @throws java.sql.SQLException when failed to execute the query or
+    *         the visitor failed
+    */
+   public int executeQueryAndVisit (RowVisitor visitor, String query, Object... args) throws SQLException {
+      long start = System.nanoTime();
       int rowCount = 0;
-
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>();
-      while (rs.next()){
-          List<String> record = new ArrayList<String>();
-         for (int i=1; i<=numCol; ++i)
-            record.add(rs.getString (i));
-         result.add(record);
-      }//end while
-      stmt.close ();
-      return result;
-   }//end executeQueryAndReturnResult
+      int fetches = 0;
+      String sql = "DECLARE result_cursor NO SCROLL CURSOR FOR " + query;
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      boolean autoCommit = conn.connection.getAutoCommit();
+      try{
+         // a cursor only lives as long as its transaction
+         conn.connection.setAutoCommit(false);
+         PreparedStatement stmt = conn.prepare(sql);
+         bind(stmt, args);
+         stmt.execute ();
+         PreparedStatement fetch = conn.prepare(FETCH);
+         int fetched;
+         do{
+            ResultSet rs = fetch.executeQuery ();
+            ++fetches;
+            fetched = 0;
+            while (rs.next()){
+               visitor.visit(rs);
+               ++fetched;
+            }//end while
+            rs.close ();
+            rowCount += fetched;
+         }while (fetched == FETCH_SIZE);
+         conn.connection.commit();
+         return rowCount;
+      }catch (SQLException e){
+         rollback(conn);
+         conn.statements.evict(sql);
+         throw e;
+      }finally{
+         try{
+            conn.connection.setAutoCommit(autoCommit);
+         }finally{
+            this._pool.release(conn);
+            // the DECLARE, every FETCH and the commit
+            Metrics.call(start, 2 + fetches);
+         }//end try
+      }//end try
+   }//end executeQueryAndVisit
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the number of results
     *
-    * @param query the input query string
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
+   public int executeQuery (String query, Object... args) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         PreparedStatement stmt = conn.prepare(query);
+         bind(stmt, args);
 
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery ();
 
-       int rowCount = 0;
+         int rowCount = 0;
 
-       // iterates through the result set and count nuber of results.
-       while(rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
+         // iterates through the result set and count nuber of results.
+         while(rs.next()){
+            rowCount++;
+         }//end while
+         rs.close ();
+         return rowCount;
+      }catch (SQLException e){
+         // the statement may have failed in its server-side PREPARE
+         conn.statements.evict(query);
+         throw e;
+      }finally{
+         this._pool.release(conn);
+         Metrics.call(start, 1);
+      }//end try
    }
 
+   /**
+    * Method to test whether a query returns any row.  The query is wrapped
+    * in EXISTS so the server stops at the first match and only a single
+    * boolean comes back over the wire.
+    *
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
+    * @return true if the query returns at least one row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public boolean exists (String query, Object... args) throws SQLException {
+      return scalar("SELECT EXISTS (" + query + ")", args) != 0;
+   }//end exists
+
+   /**
+    * Method to count the rows of a query on the server.  Only the count
+    * is returned, not the rows themselves.
+    *
+    * @param query the input query template with '?' placeholders
+    * @param args the values bound to the placeholders
+    * @return the number of rows the query returns
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int count (String query, Object... args) throws SQLException {
+      return (int) scalar("SELECT COUNT(*) FROM (" + query + ") AS probe", args);
+   }//end count
+
+   /**
+    * Runs a query returning a single numeric or boolean value.
+    */
+   private long scalar (String query, Object[] args) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         PreparedStatement stmt = conn.prepare(query);
+         bind(stmt, args);
+         ResultSet rs = stmt.executeQuery ();
+         long value = 0;
+         if (rs.next()){
+            Object v = rs.getObject(1);
+            if (v instanceof Boolean)
+               value = ((Boolean) v).booleanValue() ? 1 : 0;
+            else if (v instanceof Number)
+               value = ((Number) v).longValue();
+         }//end if
+         rs.close ();
+         return value;
+      }catch (SQLException e){
+         // the statement may have failed in its server-side PREPARE
+         conn.statements.evict(query);
+         throw e;
+      }finally{
+         this._pool.release(conn);
+         Metrics.call(start, 1);
+      }//end try
+   }//end scalar
+
+   /**
+    * Method to find a watermark for a bigserial column: the value its
+    * sequence handed out last, returned once no transaction that drew a
+    * value up to it is still running.  Values are drawn before commit and
+    * commits come in any order, so the largest value visible in the table
+    * is no watermark; this one is, since every row at or below it has
+    * committed or rolled back for good.  A transaction that draws a value
+    * without having written anything yet has no xid to wait for, but the
+    * writers here have: the CONNECTION_CHANGES trigger runs after its row
+    * is written, and ACCEPT_CONNECTION updates before it inserts.
+    *
+    * @param sequence the name of the sequence
+    * @param timeoutMillis how long to wait for running transactions
+    * @return the last value handed out, 0 if none has been since it was
+    *         created or restarted
+    * @throws java.sql.SQLException when the sequence cannot be read, or
+    *         transactions are still running after timeoutMillis
+    */
+   long settledSequenceValue (String sequence, long timeoutMillis) throws SQLException {
+      long value = scalar("SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM " + sequence, new Object[0]);
+      // taken after the value, so whoever drew a value up to it is listed
+      // here as running or has already ended
+      String running = executeQueryAndReturnTable("SELECT CAST(txid_current_snapshot() AS text)").getString(0, 0);
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      while (exists("SELECT 1 FROM txid_snapshot_xip(CAST(? AS txid_snapshot)) AS x(xid) " +
+                    "WHERE xid IN (SELECT txid_snapshot_xip(txid_current_snapshot()))", running)){
+         if (System.currentTimeMillis() >= deadline)
+            throw new SQLException("Transactions drawing from " + sequence + " still running after "
+               + timeoutMillis + " ms");
+         try{
+            Thread.sleep(10);
+         }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for transactions drawing from " + sequence);
+         }//end try
+      }//end while
+      return value;
+   }//end settledSequenceValue
+
    /**
     * Method to fetch the last value from sequence. This
     * method issues the query to the DBMS and returns the current
@@ -207,25 +653,302 @@ public class ProfNetwork {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
+      long start = System.nanoTime();
+      ConnectionPool.Pooled conn = this._pool.acquire();
+      try{
+         PreparedStatement stmt = conn.prepare("SELECT currval(CAST(? AS regclass))");
+         stmt.setString(1, sequence);
+         ResultSet rs = stmt.executeQuery ();
+         int value = rs.next() ? rs.getInt(1) : -1;
+         rs.close ();
+         return value;
+      }catch (SQLException e){
+         // the statement may have failed in its server-side PREPARE
+         conn.statements.evict("SELECT currval(CAST(? AS regclass))");
+         throw e;
+      }finally{
+         this._pool.release(conn);
+         Metrics.call(start, 1);
+      }//end try
+   }
+
+   /**
+    * Method to advance a sequence. This method issues the query to the
+    * DBMS and returns the next value of the sequence
+    *
+    * @param sequence name of the DB sequence
+    * @return next value of a sequence
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getNextSeqVal(String sequence) throws SQLException {
+      return (int) scalar("SELECT nextval(CAST(? AS regclass))", new Object[] { sequence });
+   }
 
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
-	return -1;
+   /**
+    * @return a message id no other sender has been given
+    * @throws java.sql.SQLException when a new block of ids cannot be reserved
+    */
+   public int nextMessageId() throws SQLException {
+      return this._msgIds.next();
    }
 
    /**
-    * Method to close the physical connection if it is open.
+    * @return the graph of accepted connections, loaded on first use
+    * @throws java.sql.SQLException when the connections cannot be read
     */
-   public void cleanup(){
+   public SocialGraph graph() throws SQLException {
+      SocialGraph graph = this._graph;
+      if (graph == null){
+         this._graphLock.lock();
+         try{
+            graph = this._graph;
+            if (graph == null){
+               graph = GRAPH_SNAPSHOT == null ? SocialGraph.load(this) : snapshotGraph();
+               this._graph = graph;
+            }//end if
+         }finally{
+            this._graphLock.unlock();
+         }//end try
+      }//end if
+      return graph;
+   }
+
+   /**
+    * Maps the graph snapshot, writing it first if it is missing or newer
+    * than the tables (they were reloaded and FRIENDSHIP.seq restarted),
+    * and adds the connections accepted after it was written.  Every row
+    * up to the watermark had committed or rolled back when the snapshot
+    * was read, so the rows above it are exactly the ones it lacks.
+    */
+   private SocialGraph snapshotGraph() throws SQLException {
       try{
-         if (this._connection != null){
-            this._connection.close ();
+         File file = new File(GRAPH_SNAPSHOT);
+         long latest = scalar(GraphSnapshot.LAST_SEQ, new Object[0]);
+         if (this._snapshot == null && file.exists())
+            this._snapshot = GraphSnapshot.open(file);
+         if (this._snapshot == null || this._snapshot.watermark() > latest){
+            GraphSnapshot.write(this, file);
+            this._snapshot = GraphSnapshot.open(file);
          }//end if
-      }catch (SQLException e){
-         // ignored.
+         this._users.attach(this._snapshot);
+      }catch (IOException e){
+         throw new SQLException("Cannot use graph snapshot " + GRAPH_SNAPSHOT + ": " + e.getMessage());
+      }//end try
+      ResultTable delta = executeQueryAndReturnTable(
+         "SELECT lo, hi FROM FRIENDSHIP WHERE seq > ?", this._snapshot.watermark());
+      int[] lo = new int[delta.rows()];
+      int[] hi = new int[delta.rows()];
+      for (int i = 0; i < lo.length; ++i){
+         lo[i] = delta.getInt(i, 0);
+         hi[i] = delta.getInt(i, 1);
+      }//end for
+      return this._snapshot.graph().withEdges(lo, hi, lo.length);
+   }//end snapshotGraph
+
+   /**
+    * Method to find how many accepted connections apart two users are,
+    * entirely on the server.  One recursive query runs a breadth-first
+    * search: each step carries a whole frontier and the set of users
+    * seen so far as arrays, expands the frontier through both edge
+    * directions of FRIENDSHIP and drops the users already seen, so every
+    * user is expanded at most once.  The walk stops as soon as the
+    * frontier holds the target or runs empty, and the cost is a single
+    * round trip no matter how many friends the users have.
+    *
+    * @param from the userNo the walk starts at
+    * @param to the userNo being looked for
+    * @param maxHops the depth limit of the walk
+    * @return the distance between the users, or -1 if further than maxHops
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int connectionDistance(int from, int to, int maxHops) throws SQLException {
+      String query =
+         "WITH RECURSIVE bfs(depth, frontier, seen) AS ( " +
+         "   SELECT 0, ARRAY[CAST(? AS integer)], ARRAY[CAST(? AS integer)] " +
+         " UNION ALL " +
+         "   SELECT b.depth + 1, n.next, b.seen || n.next " +
+         "   FROM bfs b, LATERAL (SELECT ARRAY( " +
+         "      SELECT F.hi FROM FRIENDSHIP F WHERE F.lo = ANY (b.frontier) " +
+         "      UNION " +
+         "      SELECT F.lo FROM FRIENDSHIP F WHERE F.hi = ANY (b.frontier) " +
+         "      EXCEPT " +
+         "      SELECT unnest(b.seen)) AS next) n " +
+         "   WHERE b.depth < ? AND b.frontier <> '{}' AND NOT CAST(? AS integer) = ANY (b.frontier) " +
+         ") " +
+         "SELECT COALESCE(MIN(depth), -1) FROM bfs WHERE CAST(? AS integer) = ANY (frontier)";
+      return (int) scalar(query, new Object[] { from, from, maxHops, to, to });
+   }
+
+   /**
+    * Adds accepted connections to the loaded graph, if any.  Holds the
+    * same lock as graph(), so a graph being loaded gets them too.
+    *
+    * @param lo one end of every connection
+    * @param hi the other end of every connection
+    * @param count the number of connections
+    */
+   public void addConnections(int[] lo, int[] hi, int count) {
+      this._graphLock.lock();
+      try{
+         SocialGraph graph = this._graph;
+         if (graph != null)
+            this._graph = graph.withEdges(lo, hi, count);
+      }finally{
+         this._graphLock.unlock();
+      }//end try
+   }
+
+   /**
+    * @return the upkeep job of the MESSAGE partitions and archive
+    */
+   public Archiver archiver() {
+      return this._archiver;
+   }
+
+   /**
+    * @return the feed of connection changes made by every process
+    */
+   public ChangeFeed changes() {
+      return this._changes;
+   }
+
+   /**
+    * Drops the loaded connection graph so the next graph() call rereads it.
+    */
+   public void invalidateGraph() {
+      this._graph = null;
+   }
+
+   /**
+    * @return the people search index, built on first use
+    * @throws java.sql.SQLException when the users cannot be read
+    */
+   public PeopleIndex people() throws SQLException {
+      this._indexLock.lock();
+      try{
+         if (this._people == null)
+            this._people = PeopleIndex.load(this);
+         return this._people;
+      }finally{
+         this._indexLock.unlock();
+      }//end try
+   }
+
+   /**
+    * @return the people-you-may-know ranker, loaded on first use and
+    *         reloaded once it is older than profnetwork.recommendRefreshSec
+    * @throws java.sql.SQLException when the affiliations cannot be read
+    */
+   public Recommender recommender() throws SQLException {
+      this._indexLock.lock();
+      try{
+         long now = System.currentTimeMillis();
+         if (this._recommender == null || now - this._recommenderLoadedAt >= RECOMMEND_REFRESH_SEC * 1000L){
+            this._recommender = Recommender.load(this, RECOMMEND_BOOST);
+            this._recommenderLoadedAt = now;
+         }//end if
+         return this._recommender;
+      }finally{
+         this._indexLock.unlock();
       }//end try
+   }
+
+   /**
+    * Adds a newly created user to the people search index, if it has
+    * been built.
+    */
+   public void indexNewUser(String userId, String name, String email) {
+      this._indexLock.lock();
+      try{
+         if (this._people != null)
+            this._people.add(userId, name, email);
+      }finally{
+         this._indexLock.unlock();
+      }//end try
+   }
+
+   /**
+    * @return the dictionary of login names and userNos
+    */
+   public UserDirectory users() {
+      return this._users;
+   }
+
+   /**
+    * @return the per-user cache of friends and pending requests
+    */
+   public FriendCache friends() {
+      return this._friends;
+   }
+
+   /**
+    * @return the number of statement lookups served from a cache
+    */
+   public long getStatementCacheHits() {
+      return StatementCache.getHits();
+   }
+
+   /**
+    * @return the number of statement lookups that had to prepare
+    */
+   public long getStatementCacheMisses() {
+      return StatementCache.getMisses();
+   }
+
+   /**
+    * Method to send a message through the group-commit pipeline.
+    *
+    * @param sender the user sending the message
+    * @param receiver the user receiving the message
+    * @param contents the message text
+    * @return a future completing with the msgId once the message is committed
+    * @throws java.sql.SQLException when either user does not exist or no
+    *         message id can be reserved
+    * @throws java.lang.InterruptedException when interrupted while the queue is full
+    */
+   public Future<Integer> sendMessage(String sender, String receiver, String contents) throws SQLException, InterruptedException {
+      int senderNo = this._users.number(sender);
+      int receiverNo = this._users.number(receiver);
+      if (senderNo < 0 || receiverNo < 0)
+         throw new SQLException("User not found");
+      return sender().send(nextMessageId(), senderNo, receiverNo, contents);
+   }
+
+   /**
+    * @return the group-commit pipeline, started on first use
+    */
+   private MessageSender sender() {
+      MessageSender sender = this._sender;
+      if (sender == null){
+         this._senderLock.lock();
+         try{
+            sender = this._sender;
+            if (sender == null){
+               sender = new MessageSender(this._pool, SEND_QUEUE_SIZE, SEND_BATCH_SIZE, SEND_MAX_DELAY_MS);
+               this._sender = sender;
+            }//end if
+         }finally{
+            this._senderLock.unlock();
+         }//end try
+      }//end if
+      return sender;
+   }//end sender
+
+   /**
+    * Method to close the physical connections if they are open.
+    */
+   public void cleanup(){
+      this._changes.stop();
+      this._archiver.stop();
+      if (this._sender != null){
+         this._sender.close ();
+      }//end if
+      if (STATS_FILE != null){
+         Metrics.stopDump (STATS_FILE);
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -234,12 +957,12 @@ public class ProfNetwork {
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
    public static void main (String[] args) {
-      if (args.length != 3) {
-         System.err.println (
+      if (args.length != 3 && args.length != 4) {
+         err().println (
             "Usage: " +
             "java [-classpath <classpath>] " +
             ProfNetwork.class.getName () +
-            " <dbname> <port> <user>");
+            " <dbname> <port> <user> [serve-port]");
          return;
       }//end if
 
@@ -254,64 +977,26 @@ public class ProfNetwork {
          String dbport = args[1];
          String user = args[2];
          esql = new ProfNetwork (dbname, dbport, user, "");
+         esql.startServices ();
 
-         boolean keepon = true;
-         while(keepon) {
-            // These are sample SQL statements
-            System.out.println("\nMAIN MENU");
-            System.out.println("---------");
-            System.out.println("1. Create user");
-            System.out.println("2. Log in");
-            System.out.println("9. < EXIT");
-            String authorisedUser = null;
-            switch (readChoice()){
-               case 1: CreateUser(esql); break;
-               case 2: authorisedUser = LogIn(esql); break;
-               case 9: keepon = false; break;
-               default : System.out.println("Unrecognized choice!"); break;
-            }//end switch
-            if (authorisedUser != null) {
-              gUsr = authorisedUser;
-              boolean usermenu = true;
-              while(usermenu) {
-                System.out.println("\nMAIN MENU");
-                System.out.println("---------");
-                System.out.println("1. Compose message");
-		        System.out.println("2. View Message(s)");
-		        System.out.println("3. Change Password");
-		        System.out.println("4. Search People");
-                System.out.println("5. Send Connection Request");
-                System.out.println("6. View Connection Request(s)");
-                System.out.println("7. Change Request Status");
-                System.out.println("8. View Friends");
-                System.out.println("9. View Friends Profile");
-                System.out.println(".........................");
-                System.out.println("10. Log out");
-                switch (readChoice()){
-                   case 1: NewMessage(esql, authorisedUser); break;
-                   case 2: ViewMessage(esql, authorisedUser); break;
-                   case 3: ChangePassword(esql, authorisedUser); break;
-                   case 4: SearchPeople(esql); break;
-		           case 5: SendRequest(esql, authorisedUser); break;
-		           case 6: ViewConnectionRequest(esql, authorisedUser); break;
-		           case 7: ChangeConnection(esql, authorisedUser); break;
-                   case 8: ViewFriends(esql, authorisedUser); break;
-                   case 9: ViewFriendsProfile(esql, authorisedUser); break;
-                   case 10: usermenu = false; break;
-                   default : System.out.println("Unrecognized choice!"); break;
-                }
-              }
-            }
-         }//end while
+         if (args.length == 4) {
+            // serve many users from this JVM, one session per client
+            SessionServer.serve(esql, Integer.parseInt(args[3]));
+         }else{
+            run(esql);
+         }//end if
       }catch(Exception e) {
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }finally{
          // make sure to cleanup the created table and close the connection.
          try{
             if(esql != null) {
-               System.out.print("Disconnecting from database...");
+               out().print("Disconnecting from database...");
                esql.cleanup ();
-               System.out.println("Done\n\nBye !");
+               out().println("Done");
+               out().println("Statement cache: " + esql.getStatementCacheHits() + " hits, "
+                                  + esql.getStatementCacheMisses() + " misses");
+               out().println(esql.friends().stats() + "\n\nBye !");
             }//end if
          }catch (Exception e) {
             // ignored.
@@ -319,8 +1004,81 @@ public class ProfNetwork {
       }//end try
    }//end main
 
+   /**
+    * Runs the menus of the current session until the user exits
+    *
+    * @param esql the database shared by all sessions
+    * @throws java.io.IOException when the session's input fails or closes
+    */
+   public static void run (ProfNetwork esql) throws IOException {
+      boolean keepon = true;
+      while(keepon) {
+         // These are sample SQL statements
+         out().println("\nMAIN MENU");
+         out().println("---------");
+         out().println("1. Create user");
+         out().println("2. Log in");
+         out().println("9. < EXIT");
+         String authorisedUser = null;
+         int choice = readChoice();
+         Metrics.Action action = Metrics.begin(actionName(MAIN_ACTIONS, choice));
+         try{
+            switch (choice){
+               case 1: CreateUser(esql); break;
+               case 2: authorisedUser = LogIn(esql); break;
+               case 9: keepon = false; break;
+               default : out().println("Unrecognized choice!"); break;
+            }//end switch
+         }finally{
+            Metrics.end(action);
+         }//end try
+         if (authorisedUser != null) {
+           Session.current().user = authorisedUser;
+           boolean usermenu = true;
+           while(usermenu) {
+             out().println("\nMAIN MENU");
+             out().println("---------");
+             out().println("1. Compose message");
+		        out().println("2. View Message(s)");
+		        out().println("3. Change Password");
+		        out().println("4. Search People");
+             out().println("5. Send Connection Request");
+             out().println("6. View Connection Request(s)");
+             out().println("7. Change Request Status");
+             out().println("8. View Friends");
+             out().println("9. View Friends Profile");
+             out().println("11. View Statistics");
+             out().println("12. People You May Know");
+             out().println(".........................");
+             out().println("10. Log out");
+             int userChoice = readChoice();
+             Metrics.Action userAction = Metrics.begin(actionName(USER_ACTIONS, userChoice));
+             try{
+                switch (userChoice){
+                   case 1: NewMessage(esql, authorisedUser); break;
+                   case 2: ViewMessage(esql, authorisedUser); break;
+                   case 3: ChangePassword(esql, authorisedUser); break;
+                   case 4: SearchPeople(esql); break;
+                   case 5: SendRequest(esql, authorisedUser); break;
+                   case 6: ViewConnectionRequest(esql, authorisedUser); break;
+                   case 7: ChangeConnection(esql, authorisedUser); break;
+                   case 8: ViewFriends(esql, authorisedUser); break;
+                   case 9: ViewFriendsProfile(esql, authorisedUser); break;
+                   case 10: usermenu = false; Session.current().user = null; Session.current().dashboard = null; break;
+                   case 11: ViewStatistics(esql); break;
+                   case 12: PeopleYouMayKnow(esql, authorisedUser); break;
+                   default : out().println("Unrecognized choice!"); break;
+                }
+             }finally{
+                Metrics.end(userAction);
+             }
+           }
+         }
+      }//end while
+   }//end run
+
    public static void Greeting(){
-      System.out.println(
+      out().println(
          "\n\n*******************************************************\n" +
          "              User Interface      	               \n" +
          "*******************************************************\n");
@@ -330,42 +1088,56 @@ public class ProfNetwork {
     * Reads the users choice given from the keyboard
     * @int
     **/
-   public static int readChoice() {
+   public static int readChoice() throws IOException {
       int input;
       // returns only if a correct value is given.
       do {
-         System.out.print("Please make your choice: ");
-         try { // read the integer, parse it and break.
-            input = Integer.parseInt(in.readLine());
+         out().print("Please make your choice: ");
+         String line = readLine();
+         try { // parse the integer and break.
+            input = Integer.parseInt(line.trim());
             break;
-         }catch (Exception e) {
-            System.out.println("Your input is invalid!");
+         }catch (NumberFormatException e) {
+            out().println("Your input is invalid!");
             continue;
          }//end try
       }while (true);
       return input;
    }//end readChoice
 
+   /*
+    * Parses a numeric id typed by the user
+    * @return the id, or -1 if the input is not a number
+    **/
+   public static int parseId(String input) {
+      try {
+         return Integer.parseInt(input.trim());
+      }catch (Exception e) {
+         return -1;
+      }//end try
+   }//end parseId
+
    /*
     * Creates a new user with privided login, passowrd and phoneNum
     * An empty block and contact list would be generated and associated with a user
     **/
    public static void CreateUser(ProfNetwork esql){
       try{
-         System.out.print("\tEnter user login: ");
-         String login = in.readLine();
-         System.out.print("\tEnter user password: ");
-         String password = in.readLine();
-         System.out.print("\tEnter user email: ");
-         String email = in.readLine();
-         System.out.print("\tEnter user name: ");
-         String name = in.readLine();
-
-	     String query = String.format("INSERT INTO USR (userId, password, email, name) VALUES ('%s','%s','%s','%s')", login, password, email, name);
-         esql.executeUpdate(query);
-         System.out.println ("User successfully created!");
+         out().print("\tEnter user login: ");
+         String login = readLine();
+         out().print("\tEnter user password: ");
+         String password = readLine();
+         out().print("\tEnter user email: ");
+         String email = readLine();
+         out().print("\tEnter user name: ");
+         String name = readLine();
+
+	     String query = "INSERT INTO USR (userId, password, email, name) VALUES (?,?,?,?)";
+         esql.executeUpdate(query, login, password, email, name);
+         esql.indexNewUser(login, name, email);
+         out().println ("User successfully created!");
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
    }//end
 
@@ -375,18 +1147,27 @@ public class ProfNetwork {
     **/
    public static String LogIn(ProfNetwork esql){
       try{
-         System.out.print("\tEnter user login: ");
-         String login = in.readLine();
-         System.out.print("\tEnter user password: ");
-         String password = in.readLine();
-
-         String query = String.format("SELECT * FROM USR WHERE userId = '%s' AND password = '%s'", login, password);
-         int userNum = esql.executeQuery(query);
-	 if (userNum > 0)
-		return login;
-         return null;
+         out().print("\tEnter user login: ");
+         String login = readLine();
+         out().print("\tEnter user password: ");
+         String password = readLine();
+
+         // learns the user's userNo in the same round trip
+         String query = "SELECT userNo FROM USR WHERE userId = ? AND password = ?";
+         ResultTable rows = esql.executeQueryAndReturnTable(query, login, password);
+	 if (rows.isEmpty())
+		return null;
+         int usrNo = rows.getInt(0, 0);
+         esql.users().put(login, usrNo);
+         // warm up the first screens; they query on their own if this fails
+         try{
+            Session.current().dashboard = Dashboard.load(esql, login, usrNo);
+         }catch(SQLException e){
+            Session.current().dashboard = null;
+         }
+         return login;
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
          return null;
       }
    }//end
@@ -394,139 +1175,140 @@ public class ProfNetwork {
 // Rest of the functions definition go in here
   public static void NewConnection(ProfNetwork esqL, String usr, String friend){
     try{
-         String query = String.format("INSERT INTO CONNECTION_USR (userId, connectionId, status) VALUES ('%s','%s','Request')", usr, friend);
-         esqL.executeUpdate(query);
-         System.out.println ("Connection Request Sent! Between " + usr + " and " + friend);
+         String query = "INSERT INTO CONNECTION_USR (userNo, connectionNo, status) VALUES (?,?,'Request')";
+         esqL.executeUpdate(query, esqL.users().number(usr), esqL.users().number(friend));
+         esqL.friends().invalidate(usr);
+         esqL.friends().invalidate(friend);
+         out().println ("Connection Request Sent! Between " + usr + " and " + friend);
 		  
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
   }
 
 
   public static void ViewConnectionRequest(ProfNetwork esqL, String usr){
       try{
-         String query = String.format("SELECT userId, status FROM CONNECTION_USR WHERE connectionId = '%s' AND status != 'Accept'", usr);
-         int results = esqL.executeQuery(query);
-
-        if(results == 0){
-          System.out.println("You have no connection requests");
-        }
-        else{
-         esqL.executeQueryAndPrintResult(query);
+         Dashboard dashboard = Session.current().dashboard;
+         List<String[]> requests = dashboard == null ? null : dashboard.requests(esqL, usr);
+         if(requests != null){
+           if(requests.isEmpty()){
+             out().println("You have no connection requests");
+             return;
+           }
+           StringBuilder out = new StringBuilder("userid\tstatus\t\n");
+           for(String[] request : requests)
+             out.append(request[0]).append('\t').append(request[1]).append("\t\n");
+           out().print(out);
+           return;
+         }
+         String query = "SELECT U.userId, C.status FROM CONNECTION_USR C JOIN USR U ON U.userNo = C.userNo WHERE C.connectionNo = ? AND C.status != 'Accept'";
+         int usrNo = esqL.users().number(usr);
+
+        if(esqL.executeQueryAndPrintResult(query, usrNo) == 0){
+          out().println("You have no connection requests");
         }
 		  
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
   }
 
+  // accepting marks the request and records the friendship in one
+  // statement, so the two tables never disagree
+  static final String ACCEPT_CONNECTION =
+      "WITH accepted AS ( " +
+      "   UPDATE CONNECTION_USR SET status = 'Accept' " +
+      "   WHERE userNo = ? AND connectionNo = ? AND status = 'Request' " +
+      "   RETURNING LEAST(userNo, connectionNo) AS lo, GREATEST(userNo, connectionNo) AS hi " +
+      ") " +
+      "INSERT INTO FRIENDSHIP(lo, hi) " +
+      "SELECT a.lo, a.hi FROM accepted a " +
+      "WHERE a.lo <> a.hi AND NOT EXISTS (SELECT 1 FROM FRIENDSHIP F WHERE F.lo = a.lo AND F.hi = a.hi)";
+
 public static void ChangeConnection(ProfNetwork esqL, String usr){
     try{
-        System.out.print("\tEnter user: ");
-        String recieveuser = in.readLine();
+        out().print("\tEnter user: ");
+        String recieveuser = readLine();
 
-	    String q = String.format("SELECT * FROM USR WHERE userid = '%s'", recieveuser);
-	    int results = esqL.executeQuery(q);
+	    int recieveNo = esqL.users().number(recieveuser);
+	    int usrNo = esqL.users().number(usr);
+	    boolean results = recieveNo >= 0;
 
         
-        String query = String.format("SELECT * FROM CONNECTION_USR WHERE userId = '%s' AND status = 'Request' AND connectionId = '%s'", recieveuser, usr);
-        int results2 = esqL.executeQuery(query);
+        String query = "SELECT 1 FROM CONNECTION_USR WHERE userNo = ? AND status = 'Request' AND connectionNo = ?";
+        boolean results2 = results && esqL.exists(query, recieveNo, usrNo);
 
-	    if (results == 0 ){
-            System.out.println("Invalid userid\n");
+	    if (!results){
+            out().println("Invalid userid\n");
         }
-        else if (results2 == 0){
-            System.out.println("There are no connetion requests from this user");
+        else if (!results2){
+            out().println("There are no connetion requests from this user");
         }
         else{
            //esqL.executeQueryAndPrintResult(query);
-           System.out.print("\t1 to accept and 2 to deny: ");
-           String input = in.readLine();
+           out().print("\t1 to accept and 2 to deny: ");
+           String input = readLine();
 
            if (input.equals("1")){
-               String updatequery = String.format("UPDATE CONNECTION_USR SET status = 'Accept' where userId = '%s' AND connectionId = '%s' ", recieveuser, usr);
-               esqL.executeUpdate(updatequery);
-               System.out.println ("Connection Accepted!");
+               esqL.executeUpdate(ACCEPT_CONNECTION, recieveNo, usrNo);
+               esqL.changes().poll();
+               esqL.friends().invalidate(recieveuser);
+               esqL.friends().invalidate(usr);
+               out().println ("Connection Accepted!");
            }
            else if (input.equals("2")){
-               String updatequery = String.format("UPDATE CONNECTION_USR SET status = 'Reject' where userId = '%s' AND connectionId = '%s'", recieveuser, usr);
-               esqL.executeUpdate(updatequery);
-               System.out.println ("Connection Denied!");
+               String updatequery = "UPDATE CONNECTION_USR SET status = 'Reject' where userNo = ? AND connectionNo = ?";
+               esqL.executeUpdate(updatequery, recieveNo, usrNo);
+               esqL.friends().invalidate(recieveuser);
+               esqL.friends().invalidate(usr);
+               out().println ("Connection Denied!");
            }
            else{
-               System.out.println("Invalid Input");
+               out().println("Invalid Input");
            }
         }
 		  
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
   }
 
   public static void NewMessage(ProfNetwork esqL, String usr){
 	try{
-         System.out.println("\tEnter user: ");
-         String recieveruser = in.readLine();
+         out().println("\tEnter user: ");
+         String recieveruser = readLine();
 	
-        String q = String.format("SELECT * FROM USR WHERE userid = '%s'", recieveruser);
-        int results = esqL.executeQuery(q);
-
-        if (results > 0){
-          System.out.println("\tEnter message: ");
-          String msg = in.readLine();
-
-          String q1 = String.format("SELECT * FROM Message");
-          //esqL.executeQueryAndPrintResult(q1);
-          int msgid = esqL.executeQuery(q1) + 1;
-          //System.out.println(msgid);
-          String msgidstring = String.valueOf(msgid);
-          //TODO Get curret time
-          String sendTime = "10/9/2011 9:49:00 PM";
-          sendTime = new SimpleDateFormat("yyyyMMdd_HHmmss").format(Calendar.getInstance().getTime());
+        if (esqL.users().number(recieveruser) >= 0){
+          out().println("\tEnter message: ");
+          String msg = readLine();
 
-          String deleteStatus = "0"; 
-          String status = "Delivered";
-          String q2 = String.format("INSERT INTO Message(msgId, senderId, receiverId, contents,sendTime, deleteStatus, status) VALUES (%s, '%s', '%s', '%s', '%s', %s, '%s')", msgidstring, usr, recieveruser, msg, sendTime, deleteStatus, status);
+          // waits until the batch holding the message has committed
+          esqL.sendMessage(usr, recieveruser, msg).get();
 
-          esqL.executeUpdate(q2);
-
-        System.out.println("Message Sent!");
-
-        String test = String.format("SELECT * FROM Message WHERE msgId = %s", msgidstring);
-        //esqL.executeQueryAndPrintResult(test);
+        out().println("Message Sent!");
 	}
 	else{
 
-	  System.out.println("User not found");
+	  out().println("User not found");
 	}      
 	}catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
 
   }
   
   public static void NewMessageWithFriend(ProfNetwork esqL, String usr, String recieveruser){
 	try{
-          System.out.println("\tEnter message: ");
-          String msg = in.readLine();
-
-          String q1 = String.format("SELECT * FROM Message");
-          int msgid = esqL.executeQuery(q1) + 1;
-          String msgidstring = String.valueOf(msgid);
-          //TODO Get curret time
-          String sendTime = "10/9/2011 9:49:00 PM";
-          sendTime = new SimpleDateFormat("yyyyMMdd_HHmmss").format(Calendar.getInstance().getTime());
-          String deleteStatus = "0"; 
-          String status = "Delivered";
-          String q2 = String.format("INSERT INTO Message(msgId, senderId, receiverId, contents,sendTime, deleteStatus, status) VALUES (%s, '%s', '%s', '%s', '%s', %s, '%s')", msgidstring, usr, recieveruser, msg, sendTime, deleteStatus, status);
+          out().println("\tEnter message: ");
+          String msg = readLine();
 
-          esqL.executeUpdate(q2);
+          esqL.sendMessage(usr, recieveruser, msg).get();
 
-        System.out.println("Message Sent!");
+        out().println("Message Sent!");
 
 	}catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
 
   }
@@ -535,162 +1317,366 @@ public static void ChangeConnection(ProfNetwork esqL, String usr){
 
   public static void ChangePassword(ProfNetwork esql, String usr){
 	try{
-         System.out.println("\tEnter new password: ");
-         String newpass = in.readLine();
+         out().println("\tEnter new password: ");
+         String newpass = readLine();
 
 	 //Creating empty contact\block lists for a user
 	 //String query = String.format("INSERT INTO USR (userId, password, email, contact_list) VALUES ('%s','%s','%s')", login, password, email);
-	 String query = String.format("UPDATE USR SET password = '%s' where userId = '%s' ", newpass, usr);
+	 String query = "UPDATE USR SET password = ? where userNo = ?";
 
 
-         esql.executeUpdate(query);
-         System.out.println ("Password Changed Successfully");
+         esql.executeUpdate(query, newpass, esql.users().number(usr));
+         out().println ("Password Changed Successfully");
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
 
   }
   
   public static void SearchPeople(ProfNetwork esql){
 	try{
-         System.out.print("\tEnter name to search: ");
-         String usr = in.readLine();
+         out().print("\tEnter name to search: ");
+         String usr = readLine();
+
+         List<String[]> matches = esql.people().search(usr, SEARCH_LIMIT);
+         if(matches.isEmpty()){
+            out().println("No matching users");
+            return;
+         }
+         StringBuilder out = new StringBuilder("name\tuserid\temail\t\n");
+         for(String[] match : matches)
+            out.append(match[0]).append('\t').append(match[1]).append('\t').append(match[2]).append("\t\n");
+         out().print(out);
+      }catch(Exception e){
+         err().println (e.getMessage ());
+      }
+  }
 
-	    String query = String.format("SELECT name, userId, email FROM USR WHERE name = '%s' ", usr);
+  // a user may see a message they sent unless they deleted it (1 or 3) and
+  // one they received unless they deleted it (2 or 3)
+  static final String VISIBLE_TO_USER =
+      "((senderNo = ? AND deleteStatus <> 1 AND deleteStatus <> 3) OR " +
+      " (receiverNo = ? AND deleteStatus <> 2 AND deleteStatus <> 3))";
+
+  // best matches of the words in the messages the user can see; the GIN
+  // index on search finds the matches, ts_rank orders them
+  static final String SEARCH_MESSAGES =
+      "SELECT M.msgId, S.userId AS senderId, R.userId AS receiverId, M.sendTime, M.status, " +
+      "       TRIM(M.contents) AS contents " +
+      "FROM MESSAGE M JOIN USR S ON S.userNo = M.senderNo JOIN USR R ON R.userNo = M.receiverNo, " +
+      "     plainto_tsquery('english', ?) q " +
+      "WHERE M.search @@ q AND " + VISIBLE_TO_USER + " " +
+      "ORDER BY ts_rank(M.search, q) DESC, M.sendTime DESC, M.msgId DESC LIMIT ?";
+
+  // the sender's login name is joined in so it prints like before
+  static final String READ_MESSAGE =
+      "UPDATE Message SET status = CASE WHEN receiverNo = ? THEN 'Read' ELSE status END " +
+      "FROM USR S WHERE S.userNo = senderNo AND msgId = ? AND " + VISIBLE_TO_USER + " " +
+      "RETURNING msgId, S.userId AS senderId, sendTime, status, contents";
+
+  static final String MARK_ALL_READ =
+      "UPDATE Message SET status = 'Read' " +
+      "WHERE receiverNo = ? AND status <> 'Read' AND deleteStatus <> 2 AND deleteStatus <> 3";
+
+  // the sender deleting moves 0 -> 1 and 2 -> 3, the receiver 0 -> 2 and
+  // 1 -> 3; computed in the UPDATE so concurrent deletes can't lose a state
+  static final String DELETE_MESSAGES =
+      "UPDATE Message SET deleteStatus = CASE " +
+      "   WHEN senderNo = receiverNo THEN 3 " +
+      "   WHEN senderNo = ? THEN CASE WHEN deleteStatus = 2 THEN 3 ELSE 1 END " +
+      "   ELSE CASE WHEN deleteStatus = 1 THEN 3 ELSE 2 END END " +
+      "WHERE msgId = ANY (CAST(? AS integer[])) AND " + VISIBLE_TO_USER;
+
+  /*
+   * Deletes messages for one side of the conversation in a single statement
+   * @param ids a Postgres integer array literal, e.g. {1,2,3}
+   * @return the number of messages deleted
+   **/
+  public static int DeleteMessages(ProfNetwork esql, String usr, String ids) throws SQLException {
+      int usrNo = esql.users().number(usr);
+      int deleted = esql.executeUpdate(DELETE_MESSAGES, usrNo, ids, usrNo, usrNo);
+      Dashboard.messagesChanged();
+      return deleted;
+  }
 
-         esql.executeQueryAndPrintResult(query);
-      }catch(Exception e){
-         System.err.println (e.getMessage ());
+  /*
+   * Parses a comma separated list of message ids
+   * @return the ids as a Postgres integer array literal, or null if any
+   * id is not a number
+   **/
+  public static String parseIdArray(String input){
+      StringBuilder ids = new StringBuilder("{");
+      for(String part : input.split(",")){
+          int id = parseId(part);
+          if(id < 0)
+              return null;
+          if(ids.length() > 1)
+              ids.append(',');
+          ids.append(id);
       }
+      return ids.append('}').toString();
   }
 
   public static void ViewMessage(ProfNetwork esql, String usr){
 	try{
         while(true){
-            System.out.println("\nMESSAGE MENU");
-            System.out.println("---------");
-            System.out.println("1. View Sent Message(s)");
-            System.out.println("2. View Recieved Message(s)");
-            System.out.println("3. Read Message");
-            System.out.println("4. Delete Message");
-            System.out.println("9. Exit");
-            System.out.println("---------");
-            System.out.print("Enter option: ");
-            String option = in.readLine();
+            out().println("\nMESSAGE MENU");
+            out().println("---------");
+            out().println("1. View Sent Message(s)");
+            out().println("2. View Recieved Message(s)");
+            out().println("3. Read Message");
+            out().println("4. Delete Message");
+            out().println("5. Mark All Read");
+            out().println("6. Delete Selected Messages");
+            out().println("7. Search Messages");
+            out().println("9. Exit");
+            out().println("---------");
+            out().print("Enter option: ");
+            String option = readLine();
+
+            Metrics.Action action = Metrics.begin(actionName(MESSAGE_ACTIONS, parseId(option)));
+            try{
+                if(option.equals("1")){
+                    BrowseMessages(esql, MessagePager.outbox(esql, esql.users().number(usr)), "receiverId");
+                }
+                else if(option.equals("2")){
+                    MessagePager inbox = MessagePager.inbox(esql, esql.users().number(usr));
+                    Dashboard dashboard = Session.current().dashboard;
+                    if(dashboard != null && dashboard.inbox() != null)
+                        inbox.first(dashboard.inbox());
+                    BrowseMessages(esql, inbox, "senderId");
+                }
+                else if(option.equals("3")){
+                    out().print("\tEnter message ID: ");
+                    int msgid = parseId(readLine());
+
+                    // marks the message read (only when the receiver reads it)
+                    // and returns it in the same statement
+                    int usrNo = esql.users().number(usr);
+                    int found = esql.executeQueryAndPrintResult(READ_MESSAGE, usrNo, msgid, usrNo, usrNo);
+                    Dashboard.messagesChanged();
+                    if(found == 0){
+                        out().println("Invliad Message ID");
+                    }
+                }
+                else if(option.equals("4")){
+                    out().print("\tEnter message ID: ");
+                    int msgid = parseId(readLine());
 
-            if(option.equals("1")){
-                String query = String.format("SELECT msgId, receiverId FROM Message WHERE senderId = '%s' AND deleteStatus != 1 AND deleteStatus != 3", usr);
-                esql.executeQueryAndPrintResult(query);
-            }
-            else if(option.equals("2")){
-                String query = String.format("SELECT msgId, senderId FROM Message WHERE receiverId = '%s' AND deleteStatus != 2 AND deleteStatus != 3" , usr);
-                esql.executeQueryAndPrintResult(query);
-            }
-            else if(option.equals("3")){
-                System.out.print("\tEnter message ID: ");
-                String msgid = in.readLine();
-                
-                String senderquery = String.format("SELECT * FROM Message WHERE msgId = %s AND senderId = '%s' AND deleteStatus != 1 AND deleteStatus != 3", msgid, usr);
-                int sendermsg = esql.executeQuery(senderquery);
-            
-                String receiverquery = String.format("SELECT * FROM Message WHERE msgId = %s AND receiverId = '%s' AND deleteStatus != 2 AND deleteStatus != 3", msgid, usr);
-                int receivermsg = esql.executeQuery(receiverquery);
-                
-                if(sendermsg > 0){
-                    String query = String.format("SELECT msgId, senderId, sendTime, contents, status FROM Message WHERE msgId = %s AND senderId = '%s' " , msgid, usr);
-                    esql.executeQueryAndPrintResult(query);
-                    
-                    query = String.format("UPDATE Message SET status = 'Read' where msgId = '%s' ", msgid);
-                    esql.executeUpdate(query);
+                    if(msgid >= 0 && DeleteMessages(esql, usr, "{" + msgid + "}") > 0){
+                        out().println("Message Deleted!");
+                    }
+                    else{
+                        out().println("Invliad Message ID");
+                    }
                 }
-                else if(receivermsg > 0){
-                    String query = String.format("SELECT msgId, senderId, sendTime, status,contents FROM Message WHERE msgId = %s AND receiverId = '%s' " , msgid, usr);
-                    esql.executeQueryAndPrintResult(query);
-                    
-                    query = String.format("UPDATE Message SET status = 'Read' where msgId = '%s' ", msgid);
-                    esql.executeUpdate(query);
+                else if(option.equals("5")){
+                    int marked = esql.executeUpdate(MARK_ALL_READ, esql.users().number(usr));
+                    Dashboard.messagesChanged();
+                    out().println(marked + " message(s) marked as read");
                 }
-                else{
-                    System.out.println("Invliad Message ID");
+                else if(option.equals("6")){
+                    out().print("\tEnter message IDs (comma separated): ");
+                    String ids = parseIdArray(readLine());
+
+                    if(ids == null){
+                        out().println("Invliad Message ID");
+                    }
+                    else{
+                        out().println(DeleteMessages(esql, usr, ids) + " message(s) deleted");
+                    }
                 }
-    
-            }
-            else if(option.equals("4")){
-                System.out.print("\tEnter message ID: ");
-                String msgid = in.readLine();
+                else if(option.equals("7")){
+                    out().print("\tEnter words to search for: ");
+                    String words = readLine();
 
-                String senderquery = String.format("SELECT * FROM Message WHERE msgId = %s AND senderId = '%s'", msgid, usr);
-                int sendermsg = esql.executeQuery(senderquery);
-            
-                String receiverquery = String.format("SELECT * FROM Message WHERE msgId = %s AND receiverId = '%s'", msgid, usr);
-                int receivermsg = esql.executeQuery(receiverquery);
-
-                if(sendermsg > 0){
-                    //get current del status
-                    String query = String.format("SELECT deleteStatus FROM Message where msgId = %s", msgid);
-                    List<List<String>> res = esql.executeQueryAndReturnResult(query);
-                    int currDelStatus = Integer.valueOf(res.get(0).get(0));
-                   
-                    //get new del status
-                    int newDelStatus = (currDelStatus == 0) ? 1 : 3;
-
-                    //update del status
-                    query = String.format("UPDATE Message SET deleteStatus = %s where msgId = '%s' ", newDelStatus, msgid);
-                    esql.executeUpdate(query);
-
-                    System.out.println("Message Deleted!");
+                    int usrNo = esql.users().number(usr);
+                    if(esql.executeQueryAndPrintResult(SEARCH_MESSAGES, words, usrNo, usrNo, MESSAGE_SEARCH_LIMIT) == 0){
+                        out().println("No matching messages");
+                    }
                 }
-                else if(receivermsg > 0){
-                    //get current del status
-                    String query = String.format("SELECT deleteStatus FROM Message where msgId = %s", msgid);
-                    List<List<String>> res = esql.executeQueryAndReturnResult(query);
-                    int currDelStatus = Integer.valueOf(res.get(0).get(0));
-                   
-                    //get new del status
-                    int newDelStatus = (currDelStatus == 0) ? 2 : 3;
-
-                    //update del status
-                    query = String.format("UPDATE Message SET deleteStatus = %s where msgId = '%s' ", newDelStatus, msgid);
-                    esql.executeUpdate(query);
-
-                    System.out.println("Message Deleted!");
+                else if(option.equals("9")){
+                    out().println("Exiting Message Menu\n");
+                    break;
                 }
                 else{
-                    System.out.println("Invliad Message ID");
+                    out().println("Invalid Option");
                 }
-            }
-            else if(option.equals("9")){
-                System.out.println("Exiting Message Menu\n");
-                break;
-            }
-            else{
-                System.out.println("Invalid Option");
+            }finally{
+                Metrics.end(action);
             }
         }
 	}catch(Exception e){
-          System.err.println (e.getMessage ());
+          err().println (e.getMessage ());
 	}
   }
 
 
+  /*
+   * Shows a page of messages at a time, newest first, with controls to
+   * move to older and newer pages
+   **/
+  public static void BrowseMessages(ProfNetwork esql, MessagePager pager, String party) throws Exception {
+      // a pager already on its first page was served from the dashboard
+      ResultTable page = pager.pageNumber() == 1 ? pager.page() : pager.first();
+      if(page.isEmpty()){
+          out().println("No messages");
+          return;
+      }
+      while(true){
+          PrintPage(esql, pager, party);
+          out().println("n. Next page  p. Previous page  9. Back");
+          out().print("Enter option: ");
+          String option = readLine();
+
+          if(option.equals("n")){
+              if(pager.next().isEmpty())
+                  out().println("No older messages");
+          }
+          else if(option.equals("p")){
+              if(pager.previous().isEmpty())
+                  out().println("No newer messages");
+          }
+          else if(option.equals("9")){
+              break;
+          }
+          else{
+              out().println("Invalid Option");
+          }
+      }
+  }
+
+  // marks the received messages of a conversation page read; the sendTime
+  // bounds let the update skip every partition outside the page
+  static final String MARK_PAGE_READ =
+      "UPDATE Message SET status = 'Read' " +
+      "WHERE receiverNo = ? AND status <> 'Read' AND msgId = ANY (CAST(? AS integer[])) " +
+      "AND sendTime BETWEEN CAST(? AS timestamp) AND CAST(? AS timestamp)";
+
+  /*
+   * Shows the messages exchanged with a friend a page at a time, oldest
+   * first within the page, starting with the newest page.  Each page is
+   * one query, plus one update marking its unread received messages read.
+   **/
+  public static void ViewConversation(ProfNetwork esqL, String usr, String friend){
+      try{
+          int usrNo = esqL.users().number(usr);
+          int friendNo = esqL.users().number(friend);
+          MessagePager pager = MessagePager.conversation(esqL, usrNo, friendNo);
+          if(pager.first().isEmpty()){
+              out().println("No messages with " + friend);
+              return;
+          }
+          while(true){
+              PrintConversation(esqL, pager, usrNo);
+              out().println("n. Older messages  p. Newer messages  9. Back");
+              out().print("Enter option: ");
+              String option = readLine();
+
+              if(option.equals("n")){
+                  if(pager.next().isEmpty())
+                      out().println("No older messages");
+              }
+              else if(option.equals("p")){
+                  if(pager.previous().isEmpty())
+                      out().println("No newer messages");
+              }
+              else if(option.equals("9")){
+                  break;
+              }
+              else{
+                  out().println("Invalid Option");
+              }
+          }
+      }catch(Exception e){
+          err().println(e.getMessage());
+      }
+  }
+
+  public static void PrintConversation(ProfNetwork esql, MessagePager pager, int usrNo) throws SQLException {
+      ResultTable page = pager.page();
+      List<Integer> senders = new ArrayList<Integer>();
+      for(int i = 0; i < page.rows(); ++i)
+          senders.add(page.getInt(i, 1));
+      esql.users().resolve(senders);
+
+      StringBuilder out = new StringBuilder();
+      StringBuilder unread = new StringBuilder("{");
+      out.append("\nPage ").append(pager.pageNumber()).append('\n');
+      // pages come newest first; a conversation reads oldest first
+      for(int i = page.rows() - 1; i >= 0; --i){
+          out.append('[').append(page.getString(i, 2)).append("] ").append(esql.users().id(senders.get(i)))
+             .append(" (").append(page.getInt(i, 0)).append("): ").append(page.getString(i, 4)).append('\n');
+          if(senders.get(i) != usrNo && !"Read".equals(page.getString(i, 3)))
+              unread.append(unread.length() > 1 ? "," : "").append(page.getInt(i, 0));
+      }
+      out().print(out);
+
+      if(unread.length() > 1){
+          esql.executeUpdate(MARK_PAGE_READ, usrNo, unread.append('}').toString(),
+                             page.getTimestamp(page.rows() - 1, 2), page.getTimestamp(0, 2));
+          Dashboard.messagesChanged();
+      }
+  }
+
+  /*
+   * Prints the current page, showing the other party by login name; the
+   * names missing from the directory are looked up in one query
+   **/
+  public static void PrintPage(ProfNetwork esql, MessagePager pager, String party) throws SQLException {
+      ResultTable page = pager.page();
+      List<Integer> parties = new ArrayList<Integer>();
+      for(int i = 0; i < page.rows(); ++i)
+          parties.add(page.getInt(i, 1));
+      esql.users().resolve(parties);
+
+      StringBuilder out = new StringBuilder();
+      out.append("\nPage ").append(pager.pageNumber()).append('\n');
+      out.append("msgId\t").append(party).append("\tsendTime\tstatus\n");
+      for(int i = 0; i < page.rows(); ++i){
+          for(int c = 0; c < page.columns(); ++c){
+              String value = c == 1 ? esql.users().id(parties.get(i)) : page.getString(i, c);
+              out.append(value == null ? "" : value).append('\t');
+          }
+          out.append('\n');
+      }
+      out().print(out);
+  }
+
+
+  /*
+   * Shows the latency and round trips of every action so far, together
+   * with the statement and friend cache counters
+   **/
+  public static void ViewStatistics(ProfNetwork esql){
+      StringBuilder out = new StringBuilder("\n");
+      out.append(Metrics.report()).append('\n');
+      out.append("Statement cache: ").append(esql.getStatementCacheHits()).append(" hits, ")
+         .append(esql.getStatementCacheMisses()).append(" misses\n");
+      out.append(esql.friends().stats()).append('\n');
+      out().print(out);
+  }
+
+
     public static void FriendsMenu(ProfNetwork esqL, String usr, String friend){
         try{
 
             while(true){
-            System.out.println("\nFriend MENU");
-            System.out.println("---------");
-            System.out.println("1. Send Message(s)");
-            System.out.println("2. Send Connection");
-            System.out.println("3. View " + friend + " friends");
-            System.out.println("4. Visit " + friend + " friend");
-            System.out.println("9. Exit");
-            System.out.println("---------");
-            System.out.print("Enter option: ");
-            String option = in.readLine();
+            out().println("\nFriend MENU");
+            out().println("---------");
+            out().println("1. Send Message(s)");
+            out().println("2. Send Connection");
+            out().println("3. View " + friend + " friends");
+            out().println("4. Visit " + friend + " friend");
+            out().println("5. View conversation with " + friend);
+            out().println("9. Exit");
+            out().println("---------");
+            out().print("Enter option: ");
+            String option = readLine();
 
             
             if(option.equals("1")){
-                NewMessageWithFriend(esqL, gUsr, friend); 
+                NewMessageWithFriend(esqL, Session.current().user, friend); 
             }
             else if(option.equals("2")){
                 //NewConnection(esqL, usr, friend);
@@ -702,48 +1688,43 @@ public static void ChangeConnection(ProfNetwork esqL, String usr){
             else if(option.equals("4")){
                 ViewFriendsProfile(esqL, friend);
             }
+            else if(option.equals("5")){
+                ViewConversation(esqL, usr, friend);
+            }
             else if(option.equals("9")){
                 break;
             }
             }
         }catch(Exception e){
-            System.err.println(e.getMessage());
+            err().println(e.getMessage());
         }   
         
    } 
 
     public static void ViewFriendsProfile(ProfNetwork esqL, String usr){
       try{
-         System.out.print("\tEnter friend to view: ");
-         String friend = in.readLine();
+         out().print("\tEnter friend to view: ");
+         String friend = readLine();
 
-        //System.out.println(usr);
-        //System.out.println(friend);
+        //out().println(usr);
+        //out().println(friend);
         /*if(usr.equals("Verner")){
-           System.out.println("line 730");
+           out().println("line 730");
         }
         if(friend.equals("Angel")){
-            System.out.println("line 733");
+            out().println("line 733");
         }*/
            
-         String query = String.format("SELECT * FROM CONNECTION_USR WHERE (userId = '%s' AND connectionId = '%s') OR (connectionId = '%s' AND userId = '%s')", usr, friend, friend, usr);
-         int results = esqL.executeQuery(query);
-
-           
-         String query2 = String.format("SELECT * FROM CONNECTION_USR WHERE (userId = '%s' AND connectionId = '%s') OR (connectionId = '%s' AND userId = '%s')", friend, usr, usr, friend);
-         int results2 = esqL.executeQuery(query2);
-        //System.out.println(results2);
-
-        if(results == 0 && results2 == 0){
-          System.out.println("\tThere is no connection with this user");
+        if(!esqL.friends().get(usr).isConnected(friend)){
+          out().println("\tThere is no connection with this user");
         }
         else{
-         System.out.println("Viewing " + friend + " profile");
+         out().println("Viewing " + friend + " profile");
          FriendsMenu(esqL, usr, friend);
         }
 		  
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
     }
 
@@ -751,184 +1732,119 @@ public static void ChangeConnection(ProfNetwork esqL, String usr){
 
     public static void ViewFriendsConncetion(ProfNetwork esqL, String friend){
       try{
-         String query = String.format("SELECT U.name, U.userId FROM CONNECTION_USR C, USR U WHERE ((C.connectionId = U.userId AND C.userId = '%s') OR  (C.userId = U.userId AND C.connectionId = '%s')) AND C.status = 'Accept'", friend, friend);
-         int results = esqL.executeQuery(query);
+         FriendCache.Entry friends = esqL.friends().get(friend);
 
-        if(results == 0){
-          System.out.println("Your connection has no friends :(");
+        if(friends.friends.isEmpty()){
+          out().println("Your connection has no friends :(");
         }
         else{
-         esqL.executeQueryAndPrintResult(query);
+         PrintFriends(friends);
         }
 		  
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
  
     }
+    public static void PrintFriends(FriendCache.Entry friends){
+        StringBuilder out = new StringBuilder("name\tuserid\t\n");
+        for(String[] friend : friends.friends)
+            out.append(friend[1]).append('\t').append(friend[0]).append("\t\n");
+        out().print(out);
+    }
+
     public static void ViewFriends(ProfNetwork esqL, String usr){
       try{
-         String query = String.format("SELECT U.name, U.userId FROM CONNECTION_USR C, USR U WHERE ((C.connectionId = U.userId AND C.userId = '%s') OR  (C.userId = U.userId AND C.connectionId = '%s')) AND C.status = 'Accept'", usr, usr);
-         int results = esqL.executeQuery(query);
+         FriendCache.Entry friends = esqL.friends().get(usr);
 
-        if(results == 0){
-          System.out.println("You have no friends :(");
+        if(friends.friends.isEmpty()){
+          out().println("You have no friends :(");
         }
         else{
-         esqL.executeQueryAndPrintResult(query);
+         PrintFriends(friends);
         }
 		  
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
  
     }
 
+    public static void PeopleYouMayKnow(ProfNetwork esqL, String usr){
+      try{
+        int usrNo = esqL.users().number(usr);
+        // the rows java Recommender stored, if it has run; ranked live otherwise
+        List<Recommender.Recommendation> people = Recommender.precomputed(esqL, usrNo, RECOMMEND_LIMIT);
+        if(people.isEmpty())
+          people = esqL.recommender().recommend(esqL.graph(), usrNo, RECOMMEND_LIMIT);
+        if(people.isEmpty()){
+          out().println("No one to recommend yet, make some connections first");
+          return;
+        }
+        List<Integer> nos = new ArrayList<Integer>();
+        for(Recommender.Recommendation r : people)
+          nos.add(r.userNo);
+        esqL.users().resolve(nos);
+        StringBuilder out = new StringBuilder("userid	mutual connections	shared companies/schools	\n");
+        for(Recommender.Recommendation r : people)
+          out.append(esqL.users().id(r.userNo)).append('\t').append(r.mutualFriends).append('\t')
+             .append(r.sharedAffiliations).append("\t\n");
+        out().print(out);
+      }catch(Exception e){
+         err().println (e.getMessage ());
+      }
+    }
+
     public static void SendRequest(ProfNetwork esqL, String usr){
 	try{
-        System.out.println("Enter usr to send connection: ");
-        String friend = in.readLine();
+        out().println("Enter usr to send connection: ");
+        String friend = readLine();
   
-	    String q = String.format("SELECT * FROM USR WHERE userid = '%s'", friend);
-	    int results = esqL.executeQuery(q);
-
-	    if (results == 0 ){
-            System.out.println("Invalid userid\n");
+	    if (esqL.users().number(friend) < 0){
+            out().println("Invalid userid\n");
+        }
+        else if (esqL.users().number(friend) == esqL.users().number(usr)){
+            out().println("You cannot send a connection request to yourself\n");
         }
         else{
             /*String query = String.format("SELECT * FROM CONNECTION_USR c WHERE (c.userId = '%s' or c.connectionId = '%s') AND c.status = 'Accept';", usr, usr);
             int n = esqL.executeQuery(query);
-            //System.out.println(n);
+            //out().println(n);
             if(n < 6){
-                System.out.println("Has 5 or less connections");
+                out().println("Has 5 or less connections");
                 NewConnection(esqL, usr,friend);
             }
-            else/* if(CheckConnection(esqL,  gUsr , friend)){
-                System.out.println("Connection is doable and sent");
+            else/* if(CheckConnection(esqL,  Session.current().user , friend)){
+                out().println("Connection is doable and sent");
                 NewConnection(esqL, usr,friend);
             }*/
 
             NewConnection(esqL, usr,friend);
         }  
 	}catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
 
   }
+    /*
+     * Checks whether friend is within CONNECTION_LEVELS accepted connections
+     * of usr, using the in-memory connection graph or, in server graph
+     * mode, a single recursive query
+     * @return true if a connection request may be sent
+     **/
     public static boolean CheckConnection(ProfNetwork esqL, String usr, String friend){
       try{
-        //System.out.println(usr);
-        //System.out.println(friend);
-        //String query = String.format("SELECT c.userId, c.connectionId FROM CONNECTION_USR c WHERE c.status = 'Accepted' AND (c.userId = '%s' or c.connectionId = '%s');", usr, usr);
-        String query = String.format("SELECT c.userId, c.connectionId FROM CONNECTION_USR c WHERE (c.userId = '%s' or c.connectionId = '%s') AND c.status = 'Accept';", usr, usr);
-        //int size = esqL.executeQuery(query);
-        //System.out.println("q result size: " + size);
-
-        List<List<String>> ids = esqL.executeQueryAndReturnResult(query);
-        List<String> allIds = new ArrayList<String>();
-        //System.out.println("ids size: " + ids.size());
-
-        for(int i = 0; i < ids.size(); ++i){ //add userids to allIds
-            for(int j = 0; j < ids.get(i).size(); ++j){
-                String curr = ids.get(i).get(j).trim();
-                //System.out.println("[" + curr + "]");
-                if(!usr.equals(curr)){
-                   //System.out.println("Added on first: " + "[" + curr + "]");
-                    allIds.add(curr);
-                }
-            }
-        }
-
-        //System.out.println("all ids size: " + allIds.size());/
-      /*  for(int i = 0; i < allIds.size(); ++i){ //check if friend in 1st level of connection
-            //System.out.println(allIds.get(i));
-            if(friend.equals(allIds.get(i))){
-                System.out.println("Within one level");
-                return true;
-            }
-        }
-*/
-        //System.out.println("line 829 so failed");
-    //System.out.println("firs size: " + allIds.size());
-    int prevsize = allIds.size();
-    boolean duplicate = false;
-    for(int i = 0; i < allIds.size(); ++i){ //add 2nd level of connection to allIds
-        //query = String.format("SELECT c.userId, c.connectionId FROM CONNECTION_USR c WHERE (c.userId = '%s' AND c.status = 'Accept' ) or (c.connectionId = '%s' AND c.status = 'Accept');", allIds.get(i).trim(), allIds.get(i).trim());
-        query = String.format("SELECT c.userId, c.connectionId FROM CONNECTION_USR c WHERE (c.userId = '%s' or c.connectionId = '%s') AND c.status = 'Accept';", allIds.get(i).trim() , allIds.get(i).trim() );
-        System.out.println("Adding [" +  allIds.get(i).trim() + "] firnds") ;
-        ids = esqL.executeQueryAndReturnResult(query);
-        for(int k = 0; k < ids.size(); ++k){
-            for(int j = 0; j < ids.get(k).size(); ++j){
-                String curr = ids.get(k).get(j).trim();
-                if(k >= 1)
-                    break;
-
-
-                if(curr.equals(friend)){
-                    //System.out.println("second level");    
-                    return true;
-                }
-                if(!usr.equals(curr) && !allIds.contains(curr)){
-                    System.out.println("added on 2nd level: " + "[" + curr + "]");
-                    allIds.add(curr);
-                }
-               /* duplicate = false;
-                for(int n = 0; n < allIds.size(); ++n){
-                    if(allIds.get(n).equals(curr){
-                        duplicate = true;
-                        break;
-                    }
-                }
-                if(duplicate){
-                    continue;
-                }
-                allIds.add(curr);*/
-            }
-        }
-    }
-    
-
-    
-        return false;
-    /*for(int i = 0; i < allIds.size(); ++i){ //check if friend in 2nd level of connection
-        if(friend.equals(allIds.get(i))){
-            System.out.println("second level check 2");
-            return true;
-        }
-    }*/
-/*
-    duplicate = false;
-    for(int i = 0; i < allIds.size(); ++i){ //add 3rd level of connection to allIds
-        query = String.format("SELECT userId, connectionId FROM CONNECTION_USR c WHERE (c.userId == '%s' or c.connectionId = '%s') AND c.status = 'Accepted';", allIds.get(i), allIds.get(i));
-        ids = esqL.executeQueryAndReturnResult(query);
-        for(int k = 0; k < ids.size(); ++k){
-            for(int j = 0; j < ids.get(k).size(); ++j){
-                duplicate = false;
-                for(int n = 0; n < allIds.size(); ++n){
-                    if(allIds.get(n).equals(ids.get(k).get(j))){
-                        duplicate = true;
-                        break;
-                    }
-                }
-                if(duplicate){
-                    continue;
-                }
-                allIds.add(ids.get(k).get(j));
-            }
-        }
-    }
-
-    for(int i = 0; i < allIds.size(); ++i){ //check if friend in 3rd level of connection
-        if(friend.equals(allIds.get(i))){
-            return true;
-        }
-    }
-*/
-
+        int from = esqL.users().number(usr);
+        int to = esqL.users().number(friend);
+        if (from < 0 || to < 0)
+          return false;
+        if (SERVER_GRAPH)
+          return esqL.connectionDistance(from, to, CONNECTION_LEVELS) >= 0;
+        return esqL.graph().withinHops(from, to, CONNECTION_LEVELS);
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
-    return false;
-}
+      return false;
+    }
     
 }//end ProfNetwork
@@ -0,0 +1,530 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * "People you may know": ranks the users two accepted connections away
+ * from a user by the number of connections they share, plus a boost for
+ * every company (WORK_EXPR) or institution (EDUCATIONAL_DETAILS) they
+ * share.
+ *
+ * Counting walks the friends of every friend in the SocialGraph into a
+ * primitive int -> count hash map.  For users whose friends have many
+ * friends the walk is split across a fork-join pool, each task counting
+ * into its own map; the maps are merged and the best k are kept in a
+ * bounded heap.  precompute() ranks every user at once, one user per task,
+ * into the RECOMMENDATION table, and precomputed() reads a user's rows
+ * back so they need not be ranked again on every request.
+ */
+public class Recommender {
+   // walks over fewer adjacency entries than this are not split
+   static final int SPLIT_WORK = Integer.getInteger("profnetwork.recommendSplitWork", 1 << 15);
+   // users ranked (and written) per precompute round
+   static final int PRECOMPUTE_BLOCK = 4096;
+   // rows per INSERT statement when precomputing
+   static final int INSERT_ROWS = 256;
+
+   private static ForkJoinPool _forkJoin = null;
+
+   private final float _boost;
+   // sorted affiliation ids of user u are affiliations[offsets[u] .. offsets[u + 1])
+   private final int[] _affOffsets;
+   private final int[] _affiliations;
+
+   /**
+    * One ranked user.
+    */
+   public static class Recommendation {
+      public final int userNo;
+      public final int mutualFriends;
+      public final int sharedAffiliations;
+      public final float score;
+
+      Recommendation (int userNo, int mutualFriends, int sharedAffiliations, float score) {
+         this.userNo = userNo;
+         this.mutualFriends = mutualFriends;
+         this.sharedAffiliations = sharedAffiliations;
+         this.score = score;
+      }
+   }//end Recommendation
+
+   private Recommender (float boost, int[] affOffsets, int[] affiliations) {
+      this._boost = boost;
+      this._affOffsets = affOffsets;
+      this._affiliations = affiliations;
+   }//end Recommender
+
+   /**
+    * Reads every user's companies and institutions.
+    *
+    * @param esql the database to read WORK_EXPR and EDUCATIONAL_DETAILS from
+    * @param boost the score a shared company or institution adds; 0 skips
+    *        reading them
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static Recommender load (ProfNetwork esql, float boost) throws SQLException {
+      if (boost == 0)
+         return new Recommender(0, new int[1], new int[0]);
+      ResultTable rows = esql.executeQueryAndReturnTable(
+         "SELECT userNo, 'W' || TRIM(company) FROM WORK_EXPR " +
+         "UNION SELECT userNo, 'E' || TRIM(instituitionName) FROM EDUCATIONAL_DETAILS");
+      HashMap<String, Integer> ids = new HashMap<String, Integer>();
+      int[] users = new int[rows.rows()];
+      int[] affs = new int[rows.rows()];
+      int size = 0;
+      for (int i = 0; i < users.length; ++i){
+         users[i] = rows.getInt(i, 0);
+         Integer id = ids.get(rows.getString(i, 1));
+         if (id == null){
+            id = ids.size();
+            ids.put(rows.getString(i, 1), id);
+         }//end if
+         affs[i] = id;
+         size = Math.max(size, users[i] + 1);
+      }//end for
+      int[] offsets = new int[size + 1];
+      for (int u : users)
+         ++offsets[u + 1];
+      for (int u = 0; u < size; ++u)
+         offsets[u + 1] += offsets[u];
+      int[] affiliations = new int[users.length];
+      int[] fill = Arrays.copyOf(offsets, size);
+      for (int i = 0; i < users.length; ++i)
+         affiliations[fill[users[i]]++] = affs[i];
+      for (int u = 0; u < size; ++u)
+         Arrays.sort(affiliations, offsets[u], offsets[u + 1]);
+      return new Recommender(boost, offsets, affiliations);
+   }//end load
+
+   private static synchronized ForkJoinPool forkJoin () {
+      if (_forkJoin == null)
+         _forkJoin = new ForkJoinPool();
+      return _forkJoin;
+   }//end forkJoin
+
+   /**
+    * Ranks the users a user may know, splitting the count across cores
+    * when the user's second-degree neighborhood is large.
+    *
+    * @param graph the accepted connections
+    * @param userNo the user to recommend to
+    * @param k the maximum number of recommendations
+    * @return the best recommendations, best first
+    */
+   public List<Recommendation> recommend (SocialGraph graph, int userNo, int k) {
+      if (graph.degree(userNo) == 0 || k <= 0)
+         return new ArrayList<Recommendation>();
+      Counts friends = friendsOf(graph, userNo);
+      Counts mutual = forkJoin().invoke(new CountTask(graph, userNo, friends, 0, graph.degree(userNo)));
+      return rank(userNo, mutual, k);
+   }//end recommend
+
+   private static Counts friendsOf (SocialGraph graph, int userNo) {
+      int degree = graph.degree(userNo);
+      Counts friends = new Counts(degree);
+      for (int i = 0; i < degree; ++i)
+         friends.add(graph.neighbor(userNo, i), 1);
+      return friends;
+   }//end friendsOf
+
+   /**
+    * Counts, for every friend of a friend in friends [from, to) of a user,
+    * how many of those friends they share.
+    */
+   private static Counts count (SocialGraph graph, int userNo, Counts friends, int from, int to) {
+      Counts counts = new Counts(64);
+      for (int i = from; i < to; ++i){
+         int f = graph.neighbor(userNo, i);
+         int degree = graph.degree(f);
+         for (int j = 0; j < degree; ++j){
+            int w = graph.neighbor(f, j);
+            if (w != userNo && friends.get(w) == 0)
+               counts.add(w, 1);
+         }//end for
+      }//end for
+      return counts;
+   }//end count
+
+   private static class CountTask extends RecursiveTask<Counts> {
+      private static final long serialVersionUID = 1L;
+
+      private final SocialGraph _graph;
+      private final int _userNo;
+      private final Counts _friends;
+      private final int _from;
+      private final int _to;
+
+      CountTask (SocialGraph graph, int userNo, Counts friends, int from, int to) {
+         this._graph = graph;
+         this._userNo = userNo;
+         this._friends = friends;
+         this._from = from;
+         this._to = to;
+      }
+
+      protected Counts compute () {
+         long work = 0;
+         for (int i = this._from; i < this._to && work < SPLIT_WORK; ++i)
+            work += this._graph.degree(this._graph.neighbor(this._userNo, i));
+         if (work < SPLIT_WORK || this._to - this._from < 2)
+            return count(this._graph, this._userNo, this._friends, this._from, this._to);
+         int mid = (this._from + this._to) >>> 1;
+         CountTask left = new CountTask(this._graph, this._userNo, this._friends, this._from, mid);
+         left.fork();
+         Counts right = new CountTask(this._graph, this._userNo, this._friends, mid, this._to).compute();
+         Counts merged = left.join();
+         merged.addAll(right);
+         return merged;
+      }//end compute
+   }//end CountTask
+
+   /**
+    * Keeps the k best candidates, scored by mutual friends plus the boost
+    * for shared affiliations.
+    */
+   private List<Recommendation> rank (int userNo, Counts mutual, int k) {
+      TopK top = new TopK(k);
+      for (int slot = 0; slot < mutual.capacity(); ++slot){
+         int candidate = mutual.keyAt(slot);
+         if (candidate < 0)
+            continue;
+         int count = mutual.valueAt(slot);
+         int shared = this._boost == 0 ? 0 : sharedAffiliations(userNo, candidate);
+         top.offer(candidate, count, shared, count + this._boost * shared);
+      }//end for
+      return top.drain();
+   }//end rank
+
+   private int sharedAffiliations (int a, int b) {
+      int size = this._affOffsets.length - 1;
+      if (a >= size || b >= size)
+         return 0;
+      int i = this._affOffsets[a], iEnd = this._affOffsets[a + 1];
+      int j = this._affOffsets[b], jEnd = this._affOffsets[b + 1];
+      int shared = 0;
+      while (i < iEnd && j < jEnd){
+         int x = this._affiliations[i], y = this._affiliations[j];
+         if (x == y)
+            ++shared;
+         if (x <= y)
+            ++i;
+         if (y <= x)
+            ++j;
+      }//end while
+      return shared;
+   }//end sharedAffiliations
+
+   /**
+    * Ranks every user with at least one connection and replaces the
+    * contents of RECOMMENDATION with the results, using every core.  The
+    * results are written to RECOMMENDATION_STAGE and swapped in by one
+    * transaction at the end, so PeopleYouMayKnow keeps serving the old
+    * rows meanwhile, and a failed run leaves them as they were.
+    *
+    * @param esql the database to write to
+    * @param graph the accepted connections
+    * @param k the number of recommendations kept per user
+    * @return the number of rows written
+    * @throws java.sql.SQLException when the results cannot be written
+    */
+   public long precompute (final ProfNetwork esql, final SocialGraph graph, final int k) throws SQLException {
+      esql.executeUpdate("TRUNCATE TABLE RECOMMENDATION_STAGE");
+      final AtomicLong written = new AtomicLong();
+      for (int start = 0; start < graph.size(); start += PRECOMPUTE_BLOCK){
+         final int end = Math.min(graph.size(), start + PRECOMPUTE_BLOCK);
+         final List<List<Recommendation>> results =
+            new ArrayList<List<Recommendation>>(Collections.<List<Recommendation>>nCopies(end - start, null));
+         final int first = start;
+         forkJoin().invoke(new RecursiveAction() {
+            protected void compute () {
+               // one task per user; a user's own count is not split
+               List<RecursiveAction> users = new ArrayList<RecursiveAction>();
+               for (int u = first; u < end; ++u){
+                  if (graph.degree(u) == 0)
+                     continue;
+                  final int userNo = u;
+                  users.add(new RecursiveAction() {
+                     protected void compute () {
+                        Counts mutual = count(graph, userNo, friendsOf(graph, userNo), 0, graph.degree(userNo));
+                        results.set(userNo - first, rank(userNo, mutual, k));
+                     }
+                  });
+               }//end for
+               invokeAll(users);
+            }
+         });
+         written.addAndGet(write(esql, first, results));
+      }//end for
+      esql.executeTransaction(
+         "DELETE FROM RECOMMENDATION",
+         "INSERT INTO RECOMMENDATION(userNo, rank, candidateNo, mutualFriends, sharedAffiliations, score) " +
+         "SELECT userNo, rank, candidateNo, mutualFriends, sharedAffiliations, score FROM RECOMMENDATION_STAGE");
+      esql.executeUpdate("TRUNCATE TABLE RECOMMENDATION_STAGE");
+      return written.get();
+   }//end precompute
+
+   private static long write (ProfNetwork esql, int first, List<List<Recommendation>> results) throws SQLException {
+      List<Object> args = new ArrayList<Object>();
+      long written = 0;
+      for (int i = 0; i < results.size(); ++i){
+         List<Recommendation> ranked = results.get(i);
+         if (ranked == null)
+            continue;
+         for (int rank = 0; rank < ranked.size(); ++rank){
+            Recommendation r = ranked.get(rank);
+            args.add(first + i);
+            args.add(rank + 1);
+            args.add(r.userNo);
+            args.add(r.mutualFriends);
+            args.add(r.sharedAffiliations);
+            args.add(r.score);
+            if (args.size() == 6 * INSERT_ROWS)
+               written += insert(esql, args);
+         }//end for
+      }//end for
+      return written + insert(esql, args);
+   }//end write
+
+   private static int insert (ProfNetwork esql, List<Object> args) throws SQLException {
+      int rows = args.size() / 6;
+      if (rows == 0)
+         return 0;
+      StringBuilder sql = new StringBuilder(
+         "INSERT INTO RECOMMENDATION_STAGE(userNo, rank, candidateNo, mutualFriends, sharedAffiliations, score) VALUES ");
+      for (int i = 0; i < rows; ++i)
+         sql.append(i == 0 ? "" : ",").append("(?,?,?,?,?,?)");
+      esql.executeUpdate(sql.toString(), args.toArray());
+      args.clear();
+      return rows;
+   }//end insert
+
+   /**
+    * Reads the recommendations precompute() stored for a user, skipping
+    * candidates the user has connected with since.
+    *
+    * @param esql the database to read RECOMMENDATION from
+    * @param userNo the user to recommend to
+    * @param k the maximum number of recommendations
+    * @return the stored recommendations, best first; empty if none are
+    *         stored for the user
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static List<Recommendation> precomputed (ProfNetwork esql, int userNo, int k) throws SQLException {
+      ResultTable rows = esql.executeQueryAndReturnTable(
+         "SELECT candidateNo, mutualFriends, sharedAffiliations, score FROM RECOMMENDATION R " +
+         "WHERE R.userNo = ? AND NOT EXISTS (SELECT 1 FROM FRIENDSHIP F " +
+         "WHERE F.lo = LEAST(R.userNo, R.candidateNo) AND F.hi = GREATEST(R.userNo, R.candidateNo)) " +
+         "ORDER BY rank LIMIT ?", userNo, k);
+      List<Recommendation> out = new ArrayList<Recommendation>(rows.rows());
+      for (int i = 0; i < rows.rows(); ++i)
+         out.add(new Recommendation(rows.getInt(i, 0), rows.getInt(i, 1), rows.getInt(i, 2),
+                                    Float.parseFloat(rows.getString(i, 3))));
+      return out;
+   }//end precomputed
+
+   /**
+    * An open-addressing hash map from non-negative ints to int counts.
+    */
+   static class Counts {
+      private int[] _keys;
+      private int[] _values;
+      private int _size = 0;
+
+      Counts (int expected) {
+         int capacity = 16;
+         while (capacity < expected * 2)
+            capacity <<= 1;
+         this._keys = new int[capacity];
+         this._values = new int[capacity];
+         Arrays.fill(this._keys, -1);
+      }
+
+      private static int hash (int key) {
+         int h = key * 0x9e3779b9;
+         return h ^ (h >>> 16);
+      }
+
+      void add (int key, int delta) {
+         int mask = this._keys.length - 1;
+         int slot = hash(key) & mask;
+         while (this._keys[slot] >= 0 && this._keys[slot] != key)
+            slot = (slot + 1) & mask;
+         if (this._keys[slot] < 0){
+            this._keys[slot] = key;
+            if (++this._size * 2 > this._keys.length){
+               this._values[slot] = delta;
+               grow();
+               return;
+            }//end if
+         }//end if
+         this._values[slot] += delta;
+      }//end add
+
+      int get (int key) {
+         int mask = this._keys.length - 1;
+         for (int slot = hash(key) & mask; this._keys[slot] >= 0; slot = (slot + 1) & mask)
+            if (this._keys[slot] == key)
+               return this._values[slot];
+         return 0;
+      }//end get
+
+      void addAll (Counts other) {
+         for (int slot = 0; slot < other._keys.length; ++slot)
+            if (other._keys[slot] >= 0)
+               add(other._keys[slot], other._values[slot]);
+      }//end addAll
+
+      private void grow () {
+         int[] keys = this._keys;
+         int[] values = this._values;
+         this._keys = new int[keys.length * 2];
+         this._values = new int[keys.length * 2];
+         Arrays.fill(this._keys, -1);
+         this._size = 0;
+         for (int slot = 0; slot < keys.length; ++slot)
+            if (keys[slot] >= 0)
+               add(keys[slot], values[slot]);
+      }//end grow
+
+      int size () {
+         return this._size;
+      }
+
+      int capacity () {
+         return this._keys.length;
+      }
+
+      /**
+       * @return the key in a slot, or -1 if the slot is empty
+       */
+      int keyAt (int slot) {
+         return this._keys[slot];
+      }
+
+      int valueAt (int slot) {
+         return this._values[slot];
+      }
+   }//end Counts
+
+   /**
+    * A bounded min-heap keeping the k best candidates; ties go to the
+    * lower userNo so results are stable.
+    */
+   static class TopK {
+      private final int[] _users;
+      private final int[] _mutual;
+      private final int[] _shared;
+      private final float[] _scores;
+      private int _size = 0;
+
+      TopK (int k) {
+         this._users = new int[k];
+         this._mutual = new int[k];
+         this._shared = new int[k];
+         this._scores = new float[k];
+      }
+
+      // true if candidate a ranks below candidate b
+      private boolean worse (float sa, int ua, float sb, int ub) {
+         return sa < sb || (sa == sb && ua > ub);
+      }
+
+      void offer (int user, int mutual, int shared, float score) {
+         if (this._size < this._users.length){
+            int i = this._size++;
+            set(i, user, mutual, shared, score);
+            while (i > 0 && worse(this._scores[i], this._users[i], this._scores[(i - 1) / 2], this._users[(i - 1) / 2])){
+               swap(i, (i - 1) / 2);
+               i = (i - 1) / 2;
+            }//end while
+            return;
+         }//end if
+         if (!worse(this._scores[0], this._users[0], score, user))
+            return;
+         set(0, user, mutual, shared, score);
+         siftDown(0, this._size);
+      }//end offer
+
+      private void siftDown (int i, int size) {
+         while (true){
+            int c = 2 * i + 1;
+            if (c >= size)
+               return;
+            if (c + 1 < size && worse(this._scores[c + 1], this._users[c + 1], this._scores[c], this._users[c]))
+               ++c;
+            if (!worse(this._scores[c], this._users[c], this._scores[i], this._users[i]))
+               return;
+            swap(i, c);
+            i = c;
+         }//end while
+      }//end siftDown
+
+      private void set (int i, int user, int mutual, int shared, float score) {
+         this._users[i] = user;
+         this._mutual[i] = mutual;
+         this._shared[i] = shared;
+         this._scores[i] = score;
+      }//end set
+
+      private void swap (int i, int j) {
+         int user = this._users[i], mutual = this._mutual[i], shared = this._shared[i];
+         float score = this._scores[i];
+         set(i, this._users[j], this._mutual[j], this._shared[j], this._scores[j]);
+         set(j, user, mutual, shared, score);
+      }//end swap
+
+      /**
+       * @return the kept candidates, best first; the heap is emptied
+       */
+      List<Recommendation> drain () {
+         Recommendation[] out = new Recommendation[this._size];
+         for (int n = this._size; n > 0; --n){
+            out[n - 1] = new Recommendation(this._users[0], this._mutual[0], this._shared[0], this._scores[0]);
+            swap(0, n - 1);
+            siftDown(0, n - 1);
+         }//end for
+         this._size = 0;
+         return Arrays.asList(out);
+      }//end drain
+   }//end TopK
+
+   /**
+    * Precomputes recommendations for every user, e.g. nightly.
+    *
+    * usage: java Recommender <db> <port> <user> [k]
+    */
+   public static void main (String[] args) {
+      if (args.length < 3){
+         System.err.println("Usage: java [-classpath <classpath>] Recommender <dbname> <port> <user> [k]");
+         return;
+      }//end if
+      ProfNetwork esql = null;
+      try{
+         Class.forName("org.postgresql.Driver").newInstance();
+         esql = new ProfNetwork(args[0], args[1], args[2], "");
+         int k = args.length > 3 ? Integer.parseInt(args[3]) : ProfNetwork.RECOMMEND_LIMIT;
+         long start = System.nanoTime();
+         SocialGraph graph = esql.graph();
+         long rows = esql.recommender().precompute(esql, graph, k);
+         System.out.println("Wrote " + rows + " recommendations for " + graph.size() + " users in "
+            + (System.nanoTime() - start) / 1000000 + " ms");
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+}//end Recommender
@@ -0,0 +1,83 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Prints query results as tab separated rows.  Each row is assembled in a
+ * single reused StringBuilder and written to a large buffered writer that
+ * is flushed once per batch of rows instead of once per cell.
+ */
+public class ResultPrinter {
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private final Writer _out;
+   private final StringBuilder _row = new StringBuilder(256);
+   private final int _batchSize;
+
+   /**
+    * @param out the stream rows are printed to
+    * @param batchSize the number of rows written between flushes
+    */
+   public ResultPrinter (OutputStream out, int batchSize) {
+      this._out = new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE);
+      this._batchSize = batchSize;
+   }//end ResultPrinter
+
+   /**
+    * Prints the column names followed by every row of a result set.
+    *
+    * @param rs the rows to print, consumed but not closed
+    * @param limit the maximum number of rows printed, 0 for all
+    * @return the number of rows printed
+    */
+   public int print (ResultSet rs, int limit) throws SQLException, IOException {
+      return print(rs, limit, 0);
+   }//end print
+
+   /**
+    * Prints the rows of a result set that continues rows printed before,
+    * e.g. the next batch fetched from a cursor.  The column names are
+    * only printed before the first row of the whole result.
+    *
+    * @param rs the rows to print, consumed but not closed
+    * @param limit the maximum number of rows printed by this call, 0 for all
+    * @param printed the number of rows of the result printed before
+    * @return the number of rows printed by this call
+    */
+   public synchronized int print (ResultSet rs, int limit, int printed) throws SQLException, IOException {
+      ResultSetMetaData rsmd = rs.getMetaData ();
+      int numCol = rsmd.getColumnCount ();
+      int rowCount = 0;
+      try{
+         while ((limit <= 0 || rowCount < limit) && rs.next()){
+            if (printed + rowCount == 0){
+               this._row.setLength(0);
+               for (int i = 1; i <= numCol; ++i)
+                  this._row.append(rsmd.getColumnName(i)).append('\t');
+               this._row.append('\n');
+               this._out.append(this._row);
+            }//end if
+            this._row.setLength(0);
+            for (int i = 1; i <= numCol; ++i)
+               this._row.append(rs.getString(i)).append('\t');
+            this._row.append('\n');
+            this._out.append(this._row);
+            if ((printed + ++rowCount) % this._batchSize == 0)
+               this._out.flush();
+         }//end while
+      }finally{
+         this._out.flush();
+      }//end try
+      return rowCount;
+   }//end print
+}//end ResultPrinter
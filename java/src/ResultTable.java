@@ -0,0 +1,324 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A query result stored by column: integer columns in an int[], bigint
+ * columns in a long[], timestamp columns as microseconds since the epoch
+ * in a long[], and every other column as trimmed strings drawn from a pool
+ * shared by the whole result, so repeated values (user ids, statuses) are
+ * stored once.  A result of n rows costs a handful of arrays instead of n
+ * lists of boxed strings.
+ *
+ * Cells are addressed by (row, column), both counted from 0; cursor()
+ * walks the rows in order.
+ */
+public class ResultTable {
+   static final int INT = 0;
+   static final int LONG = 1;
+   static final int TIMESTAMP = 2;
+   static final int STRING = 3;
+
+   static final ResultTable EMPTY = new ResultTable(new String[0], new int[0], new Object[0], new BitSet[0], 0);
+
+   private final String[] _names;
+   private final int[] _kinds;
+   // int[], long[] or String[] per column
+   private final Object[] _columns;
+   private final BitSet[] _nulls;
+   private final int _rows;
+
+   private ResultTable (String[] names, int[] kinds, Object[] columns, BitSet[] nulls, int rows) {
+      this._names = names;
+      this._kinds = kinds;
+      this._columns = columns;
+      this._nulls = nulls;
+      this._rows = rows;
+   }//end ResultTable
+
+   /**
+    * Reads the remaining rows of a result set.
+    *
+    * @param rs the rows to read, consumed but not closed
+    * @throws java.sql.SQLException when the rows cannot be read
+    */
+   public static ResultTable read (ResultSet rs) throws SQLException {
+      ResultSetMetaData rsmd = rs.getMetaData();
+      int numCol = rsmd.getColumnCount();
+      String[] names = new String[numCol];
+      int[] kinds = new int[numCol];
+      Object[] columns = new Object[numCol];
+      BitSet[] nulls = new BitSet[numCol];
+      int capacity = 16;
+      for (int c = 0; c < numCol; ++c){
+         names[c] = rsmd.getColumnName(c + 1);
+         kinds[c] = kind(rsmd.getColumnType(c + 1));
+         columns[c] = allocate(kinds[c], capacity);
+         nulls[c] = new BitSet();
+      }//end for
+
+      HashMap<String, String> pool = new HashMap<String, String>();
+      int rows = 0;
+      while (rs.next()){
+         if (rows == capacity){
+            capacity *= 2;
+            for (int c = 0; c < numCol; ++c)
+               columns[c] = grow(columns[c], capacity);
+         }//end if
+         for (int c = 0; c < numCol; ++c){
+            switch (kinds[c]){
+            case INT:
+               ((int[]) columns[c])[rows] = rs.getInt(c + 1);
+               break;
+            case LONG:
+               ((long[]) columns[c])[rows] = rs.getLong(c + 1);
+               break;
+            case TIMESTAMP:
+               Timestamp t = rs.getTimestamp(c + 1);
+               if (t != null)
+                  ((long[]) columns[c])[rows] = micros(t);
+               break;
+            default:
+               String s = rs.getString(c + 1);
+               if (s != null){
+                  s = s.trim();
+                  String pooled = pool.get(s);
+                  if (pooled == null)
+                     pool.put(s, pooled = s);
+                  ((String[]) columns[c])[rows] = pooled;
+               }//end if
+            }//end switch
+            if (rs.wasNull())
+               nulls[c].set(rows);
+         }//end for
+         ++rows;
+      }//end while
+      return new ResultTable(names, kinds, columns, nulls, rows);
+   }//end read
+
+   private static int kind (int sqlType) {
+      switch (sqlType){
+      case Types.INTEGER:
+      case Types.SMALLINT:
+      case Types.TINYINT:
+         return INT;
+      case Types.BIGINT:
+         return LONG;
+      case Types.TIMESTAMP:
+         return TIMESTAMP;
+      default:
+         return STRING;
+      }//end switch
+   }//end kind
+
+   private static Object allocate (int kind, int capacity) {
+      if (kind == INT)
+         return new int[capacity];
+      if (kind == STRING)
+         return new String[capacity];
+      return new long[capacity];
+   }//end allocate
+
+   private static Object grow (Object column, int capacity) {
+      if (column instanceof int[])
+         return Arrays.copyOf((int[]) column, capacity);
+      if (column instanceof long[])
+         return Arrays.copyOf((long[]) column, capacity);
+      return Arrays.copyOf((String[]) column, capacity);
+   }//end grow
+
+   private static long micros (Timestamp t) {
+      // getTime() already holds the milliseconds of getNanos()
+      return seconds(t.getTime()) * 1000000L + t.getNanos() / 1000;
+   }//end micros
+
+   /**
+    * @return whole seconds of a millisecond time, rounded down also before 1970
+    */
+   private static long seconds (long millis) {
+      long seconds = millis / 1000L;
+      return millis % 1000L < 0 ? seconds - 1 : seconds;
+   }//end seconds
+
+   /**
+    * Returns the rows of some columns of this result as a new result.
+    *
+    * @param rows the rows to keep, in the order wanted
+    * @param columns the columns to keep, in the order wanted
+    */
+   public ResultTable select (int[] rows, int... columns) {
+      String[] names = new String[columns.length];
+      int[] kinds = new int[columns.length];
+      Object[] data = new Object[columns.length];
+      BitSet[] nulls = new BitSet[columns.length];
+      for (int c = 0; c < columns.length; ++c){
+         int from = columns[c];
+         names[c] = this._names[from];
+         kinds[c] = this._kinds[from];
+         data[c] = allocate(kinds[c], rows.length);
+         nulls[c] = new BitSet();
+         for (int r = 0; r < rows.length; ++r){
+            if (this._nulls[from].get(rows[r]))
+               nulls[c].set(r);
+            if (kinds[c] == INT)
+               ((int[]) data[c])[r] = ((int[]) this._columns[from])[rows[r]];
+            else if (kinds[c] == STRING)
+               ((String[]) data[c])[r] = ((String[]) this._columns[from])[rows[r]];
+            else
+               ((long[]) data[c])[r] = ((long[]) this._columns[from])[rows[r]];
+         }//end for
+      }//end for
+      return new ResultTable(names, kinds, data, nulls, rows.length);
+   }//end select
+
+   /**
+    * @return the number of rows
+    */
+   public int rows () {
+      return this._rows;
+   }
+
+   public boolean isEmpty () {
+      return this._rows == 0;
+   }
+
+   /**
+    * @return the number of columns
+    */
+   public int columns () {
+      return this._names.length;
+   }
+
+   public String columnName (int column) {
+      return this._names[column];
+   }
+
+   public boolean isNull (int row, int column) {
+      return this._nulls[column].get(row);
+   }
+
+   /**
+    * @return the value of an integer column, 0 if null
+    */
+   public int getInt (int row, int column) {
+      switch (this._kinds[column]){
+      case INT:
+         return ((int[]) this._columns[column])[row];
+      case STRING:
+         String s = ((String[]) this._columns[column])[row];
+         return s == null ? 0 : Integer.parseInt(s);
+      default:
+         return (int) getLong(row, column);
+      }//end switch
+   }//end getInt
+
+   /**
+    * @return the value of a numeric column, or of a timestamp column in
+    *         microseconds since the epoch; 0 if null
+    */
+   public long getLong (int row, int column) {
+      switch (this._kinds[column]){
+      case INT:
+         return ((int[]) this._columns[column])[row];
+      case STRING:
+         String s = ((String[]) this._columns[column])[row];
+         return s == null ? 0 : Long.parseLong(s);
+      default:
+         return ((long[]) this._columns[column])[row];
+      }//end switch
+   }//end getLong
+
+   /**
+    * @return the value of a timestamp column, or null
+    */
+   public Timestamp getTimestamp (int row, int column) {
+      if (this._kinds[column] != TIMESTAMP){
+         String s = getString(row, column);
+         return s == null ? null : Timestamp.valueOf(s);
+      }//end if
+      if (isNull(row, column))
+         return null;
+      long micros = ((long[]) this._columns[column])[row];
+      long seconds = micros / 1000000L - (micros % 1000000L < 0 ? 1 : 0);
+      Timestamp t = new Timestamp(seconds * 1000L);
+      t.setNanos((int) (micros - seconds * 1000000L) * 1000);
+      return t;
+   }//end getTimestamp
+
+   /**
+    * @return any value as text, trimmed, or null; timestamps without a
+    *         fraction of a second print as the server prints them
+    */
+   public String getString (int row, int column) {
+      if (isNull(row, column))
+         return null;
+      switch (this._kinds[column]){
+      case INT:
+         return String.valueOf(((int[]) this._columns[column])[row]);
+      case LONG:
+         return String.valueOf(((long[]) this._columns[column])[row]);
+      case TIMESTAMP:
+         String t = getTimestamp(row, column).toString();
+         return t.endsWith(".0") ? t.substring(0, t.length() - 2) : t;
+      default:
+         return ((String[]) this._columns[column])[row];
+      }//end switch
+   }//end getString
+
+   /**
+    * @return a cursor before the first row
+    */
+   public Cursor cursor () {
+      return new Cursor();
+   }
+
+   /**
+    * Walks the rows of the result in order.
+    */
+   public class Cursor {
+      private int _row = -1;
+
+      /**
+       * @return true if moved to another row, false after the last one
+       */
+      public boolean next () {
+         if (this._row < _rows)
+            ++this._row;
+         return this._row < _rows;
+      }//end next
+
+      public int row () {
+         return this._row;
+      }
+
+      public boolean isNull (int column) {
+         return ResultTable.this.isNull(this._row, column);
+      }
+
+      public int getInt (int column) {
+         return ResultTable.this.getInt(this._row, column);
+      }
+
+      public long getLong (int column) {
+         return ResultTable.this.getLong(this._row, column);
+      }
+
+      public Timestamp getTimestamp (int column) {
+         return ResultTable.this.getTimestamp(this._row, column);
+      }
+
+      public String getString (int column) {
+         return ResultTable.this.getString(this._row, column);
+      }
+   }//end Cursor
+}//end ResultTable
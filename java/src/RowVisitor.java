@@ -0,0 +1,17 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a query one at a time, positioned on the result
+ * set, so a large read allocates nothing per row beyond what the visitor
+ * itself keeps.  Read the columns with the typed getters (getInt, getLong,
+ * getTimestamp) rather than getString.
+ */
+public interface RowVisitor {
+   void visit (ResultSet row) throws SQLException;
+}//end RowVisitor
@@ -0,0 +1,78 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * The state of one user's menu session: where input comes from, where
+ * output goes, and who is logged in.  The console is one session; in
+ * server mode every client connection gets its own, bound to the thread
+ * running that client's menu loop.
+ */
+public class Session {
+   private static final ThreadLocal<Session> CURRENT = new ThreadLocal<Session>();
+   private static final Session CONSOLE = new Session(System.in, System.out, System.err);
+
+   public final BufferedReader in;
+   public final PrintStream out;
+   public final PrintStream err;
+   public final ResultPrinter printer;
+
+   // the logged in user, or null
+   public String user = null;
+   // what the user saw first after logging in, or null
+   public Dashboard dashboard = null;
+
+   public Session (InputStream in, OutputStream out) {
+      this(in, new PrintStream(out, true), null);
+   }
+
+   private Session (InputStream in, PrintStream out, PrintStream err) {
+      this.in = new BufferedReader(new InputStreamReader(in));
+      this.out = out;
+      this.err = err == null ? out : err;
+      this.printer = new ResultPrinter(out, ProfNetwork.FETCH_SIZE);
+   }//end Session
+
+   /**
+    * @return the session of the calling thread, the console if none is bound
+    */
+   public static Session current () {
+      Session session = CURRENT.get();
+      return session == null ? CONSOLE : session;
+   }//end current
+
+   /**
+    * Makes this the session of the calling thread.
+    */
+   public void bind () {
+      CURRENT.set(this);
+   }
+
+   public static void unbind () {
+      CURRENT.remove();
+   }
+
+   /**
+    * Reads a line of input, flushing any pending prompt first.
+    *
+    * @return the line read
+    * @throws java.io.IOException when the input fails
+    * @throws java.io.EOFException when the user has disconnected
+    */
+   public String readLine () throws IOException {
+      this.out.flush();
+      String line = this.in.readLine();
+      if (line == null)
+         throw new EOFException("Session closed");
+      return line;
+   }//end readLine
+}//end Session
@@ -0,0 +1,92 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the ProfNetwork menus to many users from one JVM.  Clients
+ * connect to a local socket (e.g. with telnet or nc) and each connection
+ * runs its own menu loop with its own Session, on its own thread.  Sessions
+ * only hold a database connection while a statement runs, so thousands of
+ * mostly idle sessions share the small connection pool.
+ */
+public class SessionServer {
+   private static final AtomicInteger active = new AtomicInteger();
+
+   /**
+    * Accepts clients on a loopback port until the process is stopped.
+    *
+    * @param esql the database shared by all sessions
+    * @param port the local port to listen on
+    * @throws java.io.IOException when the port cannot be opened
+    */
+   public static void serve (final ProfNetwork esql, int port) throws IOException {
+      ExecutorService sessions = newSessionExecutor();
+      ServerSocket server = new ServerSocket(port, 1024, InetAddress.getByName(null));
+      ProfNetwork.out().println("Serving sessions on localhost:" + port);
+      try{
+         while (true){
+            final Socket client = server.accept();
+            sessions.execute(new Runnable() {
+               public void run () {
+                  runSession(esql, client);
+               }
+            });
+         }//end while
+      }finally{
+         server.close();
+         sessions.shutdown();
+      }//end try
+   }//end serve
+
+   /**
+    * Runs one client's menu loop and closes the connection when it ends.
+    */
+   static void runSession (ProfNetwork esql, Socket client) {
+      active.incrementAndGet();
+      try{
+         Session session = new Session(client.getInputStream(), client.getOutputStream());
+         session.bind();
+         ProfNetwork.Greeting();
+         ProfNetwork.run(esql);
+         session.out.println("Bye !");
+      }catch (IOException e){
+         // client disconnected.
+      }finally{
+         Session.unbind();
+         active.decrementAndGet();
+         try{
+            client.close();
+         }catch (IOException e){
+            // ignored.
+         }//end try
+      }//end try
+   }//end runSession
+
+   /**
+    * @return the number of sessions currently connected
+    */
+   public static int activeSessions () {
+      return active.get();
+   }
+
+   /**
+    * Uses a virtual thread per session where the JVM has them (Java 21+);
+    * older JVMs fall back to a platform thread per session.
+    */
+   static ExecutorService newSessionExecutor () {
+      try{
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }catch (Exception e){
+         return Executors.newCachedThreadPool();
+      }//end try
+   }//end newSessionExecutor
+}//end SessionServer
@@ -0,0 +1,409 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.nio.IntBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * An in-memory, read-only view of the accepted connections in
+ * FRIENDSHIP, stored in compressed sparse row (CSR) form.  Vertices are
+ * the users' userNo surrogate keys, which are dense, so no dictionary is
+ * needed: the neighbors of user u are neighbors[offsets[u] .. offsets[u + 1]).
+ * Every accepted edge is stored in both directions.
+ *
+ * The CSR arrays are IntBuffers, so they can live on the heap or in a
+ * memory-mapped GraphSnapshot.  Edges accepted after the arrays were laid
+ * out are kept in a small overlay next to them; withEdges() returns a new
+ * graph sharing the arrays with a larger overlay.
+ *
+ * Traversals are bidirectional breadth-first searches that borrow a
+ * scratch area from a small pool shared by every version of the graph,
+ * so a query usually allocates nothing but its answer and the scratch
+ * memory does not grow with the number of threads or graph versions.
+ */
+public class SocialGraph {
+   private final int _size;
+   // vertices covered by the CSR arrays
+   private final int _baseSize;
+   private final IntBuffer _offsets;
+   private final IntBuffer _neighbors;
+   // extra neighbors per vertex, never repeating an edge of the arrays
+   private final HashMap<Integer, int[]> _overlay;
+
+   private static final ArrayBlockingQueue<Search> _scratch =
+      new ArrayBlockingQueue<Search>(Math.max(1, ProfNetwork.SCRATCH_POOL_SIZE));
+
+   SocialGraph (int size, IntBuffer offsets, IntBuffer neighbors) {
+      this(size, offsets, neighbors, new HashMap<Integer, int[]>());
+   }
+
+   private SocialGraph (int baseSize, IntBuffer offsets, IntBuffer neighbors, HashMap<Integer, int[]> overlay) {
+      int size = baseSize;
+      for (Integer v : overlay.keySet())
+         size = Math.max(size, v.intValue() + 1);
+      this._size = size;
+      this._baseSize = baseSize;
+      this._offsets = offsets;
+      this._neighbors = neighbors;
+      this._overlay = overlay;
+   }//end SocialGraph
+
+   /**
+    * Loads every accepted connection from the database.
+    *
+    * @param esql the database to read FRIENDSHIP from
+    * @return the graph of accepted connections
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static SocialGraph load (ProfNetwork esql) throws SQLException {
+      final Builder builder = new Builder(1 << 16);
+      esql.executeQueryAndVisit(new RowVisitor() {
+         public void visit (ResultSet row) throws SQLException {
+            builder.addEdge(row.getInt(1), row.getInt(2));
+         }
+      }, "SELECT lo, hi FROM FRIENDSHIP");
+      return builder.build();
+   }//end load
+
+   /**
+    * Collects edges before the CSR arrays are laid out.
+    */
+   public static class Builder {
+      private int[] _src;
+      private int[] _dst;
+      private int _edges = 0;
+      private int _size = 0;
+
+      public Builder (int expectedEdges) {
+         this._src = new int[Math.max(16, expectedEdges)];
+         this._dst = new int[this._src.length];
+      }
+
+      public void addEdge (int u, int v) {
+         if (u == v || u < 0 || v < 0)
+            return;
+         this._size = Math.max(this._size, Math.max(u, v) + 1);
+         if (this._edges == this._src.length){
+            this._src = Arrays.copyOf(this._src, this._edges * 2);
+            this._dst = Arrays.copyOf(this._dst, this._edges * 2);
+         }//end if
+         this._src[this._edges] = u;
+         this._dst[this._edges] = v;
+         ++this._edges;
+      }//end addEdge
+
+      public SocialGraph build () {
+         int n = this._size;
+         int[] offsets = new int[n + 1];
+         // count the degree of every vertex, then prefix-sum into offsets
+         for (int e = 0; e < this._edges; ++e){
+            ++offsets[this._src[e] + 1];
+            ++offsets[this._dst[e] + 1];
+         }//end for
+         for (int u = 0; u < n; ++u)
+            offsets[u + 1] += offsets[u];
+         int[] neighbors = new int[offsets[n]];
+         int[] fill = Arrays.copyOf(offsets, n);
+         for (int e = 0; e < this._edges; ++e){
+            neighbors[fill[this._src[e]]++] = this._dst[e];
+            neighbors[fill[this._dst[e]]++] = this._src[e];
+         }//end for
+         return new SocialGraph(n, IntBuffer.wrap(offsets), IntBuffer.wrap(neighbors));
+      }//end build
+   }//end Builder
+
+   /**
+    * Returns a graph with more accepted connections, sharing this graph's
+    * arrays.  Edges already present are ignored.
+    *
+    * @param lo one end of every new edge
+    * @param hi the other end of every new edge
+    * @param count the number of new edges
+    * @return the larger graph, or this graph if no edge was new
+    */
+   public SocialGraph withEdges (int[] lo, int[] hi, int count) {
+      HashMap<Integer, int[]> overlay = null;
+      for (int e = 0; e < count; ++e){
+         int u = lo[e];
+         int v = hi[e];
+         if (u == v || u < 0 || v < 0 || hasEdge(overlay == null ? this._overlay : overlay, u, v))
+            continue;
+         if (overlay == null)
+            overlay = new HashMap<Integer, int[]>(this._overlay);
+         append(overlay, u, v);
+         append(overlay, v, u);
+      }//end for
+      if (overlay == null)
+         return this;
+      return new SocialGraph(this._baseSize, this._offsets, this._neighbors, overlay);
+   }//end withEdges
+
+   private static void append (HashMap<Integer, int[]> overlay, int u, int v) {
+      int[] extra = overlay.get(u);
+      extra = extra == null ? new int[1] : Arrays.copyOf(extra, extra.length + 1);
+      extra[extra.length - 1] = v;
+      overlay.put(u, extra);
+   }//end append
+
+   private boolean hasEdge (HashMap<Integer, int[]> overlay, int u, int v) {
+      if (u < this._baseSize)
+         for (int i = this._offsets.get(u); i < this._offsets.get(u + 1); ++i)
+            if (this._neighbors.get(i) == v)
+               return true;
+      int[] extra = overlay.get(u);
+      if (extra != null)
+         for (int w : extra)
+            if (w == v)
+               return true;
+      return false;
+   }//end hasEdge
+
+   /**
+    * Scratch state for one bidirectional search, reused across queries
+    * through the pool.  Only the entries of visited vertices are ever read,
+    * and only their bits are cleared afterwards.
+    */
+   private static class Search {
+      final BitSet seenA;
+      final BitSet seenB;
+      final int[] queueA;
+      final int[] queueB;
+      final int[] parentA;
+      final int[] parentB;
+      final int[] distA;
+      final int[] distB;
+
+      Search (int n) {
+         this.seenA = new BitSet(n);
+         this.seenB = new BitSet(n);
+         this.queueA = new int[n];
+         this.queueB = new int[n];
+         this.parentA = new int[n];
+         this.parentB = new int[n];
+         this.distA = new int[n];
+         this.distB = new int[n];
+      }
+   }//end Search
+
+   /**
+    * @return one more than the largest userNo with an accepted connection
+    */
+   public int size () {
+      return this._size;
+   }
+
+   /**
+    * @return the number of stored (directed) adjacency entries
+    */
+   public int adjacencyCount () {
+      return this._neighbors.limit() + 2 * overlayEdges();
+   }
+
+   /**
+    * @return the number of accepted connections held outside the arrays
+    */
+   public int overlayEdges () {
+      int count = 0;
+      for (int[] extra : this._overlay.values())
+         count += extra.length;
+      return count / 2;
+   }//end overlayEdges
+
+   /**
+    * @return the number of accepted connections of a user
+    */
+   public int degree (int vertex) {
+      if (vertex < 0 || vertex >= this._size)
+         return 0;
+      int degree = vertex < this._baseSize ? this._offsets.get(vertex + 1) - this._offsets.get(vertex) : 0;
+      int[] extra = this._overlay.isEmpty() ? null : this._overlay.get(vertex);
+      return extra == null ? degree : degree + extra.length;
+   }//end degree
+
+   /**
+    * @return the i-th neighbor of a vertex, 0 <= i < degree(vertex)
+    */
+   public int neighbor (int vertex, int i) {
+      int base = vertex < this._baseSize ? this._offsets.get(vertex + 1) - this._offsets.get(vertex) : 0;
+      if (i < base)
+         return this._neighbors.get(this._offsets.get(vertex) + i);
+      return this._overlay.get(vertex)[i - base];
+   }//end neighbor
+
+   /**
+    * @return true if two users are connected through at most maxHops
+    *         accepted connections
+    */
+   public boolean withinHops (int from, int to, int maxHops) {
+      return distance(from, to, maxHops) >= 0;
+   }
+
+   /**
+    * @return the number of accepted connections between two users, or -1
+    *         if they are further apart than maxHops
+    */
+   public int distance (int from, int to, int maxHops) {
+      if (from == to)
+         return 0;
+      if (degree(from) == 0 || degree(to) == 0)
+         return -1;
+      Search sc = scratch();
+      int meet = search(sc, from, to, maxHops);
+      int distance = meet < 0 ? -1 : sc.distA[meet] + sc.distB[meet];
+      _scratch.offer(sc);
+      return distance;
+   }//end distance
+
+   /**
+    * @return the userNos on a shortest path from one user to another,
+    *         both included, or null if they are further apart than maxHops
+    */
+   public List<Integer> shortestPath (int from, int to, int maxHops) {
+      if (from == to)
+         return Collections.singletonList(from);
+      if (degree(from) == 0 || degree(to) == 0)
+         return null;
+      Search sc = scratch();
+      int meet = search(sc, from, to, maxHops);
+      ArrayList<Integer> path = null;
+      if (meet >= 0){
+         path = new ArrayList<Integer>(sc.distA[meet] + sc.distB[meet] + 1);
+         for (int v = meet; v >= 0; v = sc.parentA[v])
+            path.add(v);
+         Collections.reverse(path);
+         for (int v = sc.parentB[meet]; v >= 0; v = sc.parentB[v])
+            path.add(v);
+      }//end if
+      _scratch.offer(sc);
+      return path;
+   }//end shortestPath
+
+   /**
+    * Takes a scratch area large enough for this graph from the pool, or
+    * allocates one with some room for the graph to grow.  Searches hand it
+    * back with offer() once done with it; one that fails midway does not,
+    * since its bits may not be cleared.
+    */
+   private Search scratch () {
+      Search sc = _scratch.poll();
+      if (sc == null || sc.queueA.length < this._size)
+         sc = new Search(this._size + (this._size >> 4) + 16);
+      return sc;
+   }//end scratch
+
+   /**
+    * Runs a bidirectional BFS from s and t, always expanding the smaller
+    * frontier by one full level.  Returns the vertex where the two searches
+    * meet on a shortest path, or -1.  parent/dist entries of the returned
+    * vertex stay valid until the scratch area goes back to the pool.
+    */
+   private int search (Search sc, int s, int t, int maxHops) {
+      int lenA = 0, lenB = 0;
+      sc.queueA[lenA++] = s;
+      sc.seenA.set(s);
+      sc.parentA[s] = -1;
+      sc.distA[s] = 0;
+      sc.queueB[lenB++] = t;
+      sc.seenB.set(t);
+      sc.parentB[t] = -1;
+      sc.distB[t] = 0;
+
+      int headA = 0, headB = 0;
+      int depthA = 0, depthB = 0;
+      // {meeting vertex, its distance}
+      int[] best = { -1, Integer.MAX_VALUE };
+      try{
+         while (depthA + depthB < maxHops && headA < lenA && headB < lenB){
+            boolean forward = (lenA - headA) <= (lenB - headB);
+            if (forward){
+               int end = lenA;
+               for (; headA < end; ++headA)
+                  lenA = expand(sc.queueA[headA], depthA, lenA, sc.seenA, sc.queueA, sc.parentA, sc.distA,
+                                sc.seenB, sc.distB, best);
+               ++depthA;
+            }else{
+               int end = lenB;
+               for (; headB < end; ++headB)
+                  lenB = expand(sc.queueB[headB], depthB, lenB, sc.seenB, sc.queueB, sc.parentB, sc.distB,
+                                sc.seenA, sc.distA, best);
+               ++depthB;
+            }//end if
+            // a meeting found while finishing a level is a shortest path
+            if (best[0] >= 0)
+               return best[1] <= maxHops ? best[0] : -1;
+         }//end while
+         return -1;
+      }finally{
+         for (int i = 0; i < lenA; ++i)
+            sc.seenA.clear(sc.queueA[i]);
+         for (int i = 0; i < lenB; ++i)
+            sc.seenB.clear(sc.queueB[i]);
+      }//end try
+   }//end search
+
+   /**
+    * Visits the unseen neighbors of u on one side of the search, first
+    * those in the arrays, then those in the overlay.
+    *
+    * @return the new length of this side's queue
+    */
+   private int expand (int u, int depth, int len, BitSet seen, int[] queue, int[] parent, int[] dist,
+                       BitSet otherSeen, int[] otherDist, int[] best) {
+      if (u < this._baseSize){
+         int end = this._offsets.get(u + 1);
+         for (int i = this._offsets.get(u); i < end; ++i)
+            len = visit(u, this._neighbors.get(i), depth, len, seen, queue, parent, dist, otherSeen, otherDist, best);
+      }//end if
+      int[] extra = this._overlay.isEmpty() ? null : this._overlay.get(u);
+      if (extra != null)
+         for (int v : extra)
+            len = visit(u, v, depth, len, seen, queue, parent, dist, otherSeen, otherDist, best);
+      return len;
+   }//end expand
+
+   private static int visit (int u, int v, int depth, int len, BitSet seen, int[] queue, int[] parent, int[] dist,
+                             BitSet otherSeen, int[] otherDist, int[] best) {
+      if (seen.get(v))
+         return len;
+      seen.set(v);
+      parent[v] = u;
+      dist[v] = depth + 1;
+      queue[len++] = v;
+      if (otherSeen.get(v) && depth + 1 + otherDist[v] < best[1]){
+         best[0] = v;
+         best[1] = depth + 1 + otherDist[v];
+      }//end if
+      return len;
+   }//end visit
+
+   /**
+    * @return the number of vertices covered by the CSR arrays
+    */
+   int baseSize () {
+      return this._baseSize;
+   }
+
+   /**
+    * @return the CSR offsets, baseSize() + 1 entries
+    */
+   IntBuffer offsets () {
+      return this._offsets.duplicate();
+   }
+
+   /**
+    * @return the CSR neighbors
+    */
+   IntBuffer neighbors () {
+      return this._neighbors.duplicate();
+   }
+}//end SocialGraph
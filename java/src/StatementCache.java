@@ -0,0 +1,121 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.postgresql.PGStatement;
+
+/**
+ * A per-connection LRU cache of PreparedStatements keyed by their SQL
+ * template.  Cached SELECT, INSERT, UPDATE and DELETE statements are
+ * prepared on the server: the driver sends PREPARE with the first
+ * execution and only EXECUTE with new parameters after that, so Postgres
+ * parses and plans a template once per connection.  Other statements
+ * (DDL, cursor commands) cannot be prepared on the server and are sent as
+ * plain text with their parameters filled in by the driver.
+ *
+ * A statement whose execution failed should be evicted: if the failure
+ * was in its PREPARE, the driver would otherwise keep sending EXECUTE for
+ * a statement the server does not have.
+ *
+ * A cache belongs to exactly one connection and is only used by whoever
+ * currently holds that connection, so it is not synchronized.
+ */
+public class StatementCache {
+   // hit/miss counters are shared by every cache in the process
+   static final AtomicLong hits = new AtomicLong();
+   static final AtomicLong misses = new AtomicLong();
+
+   // statements the server can PREPARE
+   private static final Pattern PREPARABLE =
+      Pattern.compile("^\\s*(SELECT|INSERT|UPDATE|DELETE|WITH|VALUES)\\b", Pattern.CASE_INSENSITIVE);
+
+   private final Connection _connection;
+   private final LinkedHashMap<String, PreparedStatement> _statements;
+
+   /**
+    * Creates a cache for the given connection
+    *
+    * @param connection the physical connection the statements belong to
+    * @param capacity the maximum number of statements kept open
+    */
+   public StatementCache (Connection connection, final int capacity) {
+      this._connection = connection;
+      // access-ordered so the eldest entry is the least recently used
+      this._statements = new LinkedHashMap<String, PreparedStatement>(capacity * 2, 0.75f, true) {
+         protected boolean removeEldestEntry (Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= capacity)
+               return false;
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Returns the prepared statement for a SQL template, preparing it on
+    * a miss.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @return a prepared statement ready to be bound
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare (String sql) throws SQLException {
+      PreparedStatement stmt = this._statements.get(sql);
+      if (stmt != null){
+         hits.incrementAndGet();
+         return stmt;
+      }//end if
+      misses.incrementAndGet();
+      stmt = this._connection.prepareStatement(sql);
+      if (stmt instanceof PGStatement && PREPARABLE.matcher(sql).find())
+         ((PGStatement) stmt).setUseServerPrepare(true);
+      this._statements.put(sql, stmt);
+      return stmt;
+   }//end prepare
+
+   /**
+    * Drops a statement from the cache, e.g. after it failed in a way that
+    * may have left it unusable.
+    */
+   public void evict (String sql) {
+      closeQuietly(this._statements.remove(sql));
+   }//end evict
+
+   /**
+    * Closes every cached statement.
+    */
+   public void clear () {
+      Iterator<PreparedStatement> it = this._statements.values().iterator();
+      while (it.hasNext()){
+         closeQuietly(it.next());
+         it.remove();
+      }//end while
+   }//end clear
+
+   public static long getHits () {
+      return hits.get();
+   }
+
+   public static long getMisses () {
+      return misses.get();
+   }
+
+   private static void closeQuietly (PreparedStatement stmt) {
+      if (stmt == null)
+         return;
+      try{
+         stmt.close();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end closeQuietly
+}//end StatementCache
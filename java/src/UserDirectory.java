@@ -0,0 +1,121 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps login names (USR.userId) to the integer surrogate keys (USR.userNo)
+ * every other table uses, and back.  A name is looked up in the database
+ * once; after that both directions are answered from memory.  Users are
+ * never renamed or deleted, so entries never go stale.  Names that are not
+ * found are not remembered, since the user may be created later.
+ */
+public class UserDirectory {
+   private final ProfNetwork _esql;
+   private final ConcurrentHashMap<String, Integer> _numbers = new ConcurrentHashMap<String, Integer>();
+   private final ConcurrentHashMap<Integer, String> _ids = new ConcurrentHashMap<Integer, String>();
+   // userIds known without a query, if a graph snapshot is open
+   private volatile GraphSnapshot _snapshot = null;
+
+   /**
+    * @param esql the database users are looked up in
+    */
+   public UserDirectory (ProfNetwork esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * @return the userNo of a login name, or -1 if there is no such user
+    * @throws java.sql.SQLException when the lookup fails
+    */
+   public int number (String userId) throws SQLException {
+      Integer no = this._numbers.get(userId);
+      if (no != null)
+         return no.intValue();
+      ResultTable rows = this._esql.executeQueryAndReturnTable(
+         "SELECT userNo FROM USR WHERE userId = ?", userId);
+      if (rows.isEmpty())
+         return -1;
+      int found = rows.getInt(0, 0);
+      put(userId, found);
+      return found;
+   }//end number
+
+   /**
+    * @return the login name of a userNo, or null if there is no such user
+    * @throws java.sql.SQLException when the lookup fails
+    */
+   public String id (int userNo) throws SQLException {
+      String id = this._ids.get(userNo);
+      if (id != null)
+         return id;
+      GraphSnapshot snapshot = this._snapshot;
+      id = snapshot == null ? null : snapshot.userId(userNo);
+      if (id != null){
+         put(id, userNo);
+         return id;
+      }//end if
+      ResultTable rows = this._esql.executeQueryAndReturnTable(
+         "SELECT userId FROM USR WHERE userNo = ?", userNo);
+      if (rows.isEmpty())
+         return null;
+      id = rows.getString(0, 0);
+      put(id, userNo);
+      return id;
+   }//end id
+
+   /**
+    * Looks up every userNo not known yet with a single query, so a page of
+    * rows can then be printed without a query per row.
+    *
+    * @throws java.sql.SQLException when the lookup fails
+    */
+   public void resolve (Collection<Integer> userNos) throws SQLException {
+      GraphSnapshot snapshot = this._snapshot;
+      StringBuilder missing = new StringBuilder("{");
+      for (Integer no : userNos){
+         if (this._ids.containsKey(no))
+            continue;
+         String id = snapshot == null ? null : snapshot.userId(no);
+         if (id != null)
+            put(id, no);
+         else
+            missing.append(missing.length() > 1 ? "," : "").append(no);
+      }//end for
+      if (missing.length() == 1)
+         return;
+      ResultTable rows = this._esql.executeQueryAndReturnTable(
+         "SELECT userNo, userId FROM USR WHERE userNo = ANY (CAST(? AS integer[]))", missing.append('}').toString());
+      for (int i = 0; i < rows.rows(); ++i)
+         put(rows.getString(i, 1), rows.getInt(i, 0));
+   }//end resolve
+
+   /**
+    * Answers userNo lookups from a graph snapshot's dictionary before
+    * asking the database.  Users created after the snapshot are still
+    * looked up.
+    */
+   public void attach (GraphSnapshot snapshot) {
+      this._snapshot = snapshot;
+   }
+
+   /**
+    * Records a mapping learned elsewhere, e.g. from a join that returned
+    * both columns.
+    */
+   public void put (String userId, int userNo) {
+      this._numbers.put(userId, userNo);
+      this._ids.put(userNo, userId);
+   }//end put
+
+   /**
+    * @return the number of users known
+    */
+   public int size () {
+      return this._ids.size();
+   }
+}//end UserDirectory
@@ -0,0 +1,88 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * Tests of the CSV field parsers of BulkLoader.
+ */
+public class BulkLoaderTest {
+
+   private static Object parse (char kind, String text) throws IOException {
+      // a field is parsed out of the front of a larger read buffer
+      byte[] bytes = (text + ",ignored").getBytes(StandardCharsets.UTF_8);
+      return BulkLoader.parse(kind, bytes, text.getBytes(StandardCharsets.UTF_8).length, new GregorianCalendar());
+   }//end parse
+
+   private static long time (int year, int month, int day, int hour, int minute, int second) {
+      Calendar calendar = new GregorianCalendar();
+      calendar.clear();
+      calendar.set(year, month - 1, day, hour, minute, second);
+      return calendar.getTimeInMillis();
+   }//end time
+
+   public static void testInt () throws Exception {
+      Check.equal(Integer.valueOf(0), parse('i', "0"), "zero");
+      Check.equal(Integer.valueOf(42), parse('i', "42"), "positive");
+      Check.equal(Integer.valueOf(-17), parse('i', "-17"), "negative");
+      Check.equal(Integer.valueOf(7), parse('i', "007"), "leading zeros");
+      Check.equal(Integer.valueOf(Integer.MAX_VALUE), parse('i', "2147483647"), "largest int");
+      Check.equal(Integer.valueOf(Integer.MIN_VALUE), parse('i', "-2147483648"), "smallest int");
+   }//end testInt
+
+   public static void testBadInt () {
+      for (final String text : new String[] { "", "-", "12a", " 1", "1.5", "+1", "2147483648", "-2147483649", "99999999999" })
+         Check.fails(IOException.class, "'" + text + "'", new Check.Failing() {
+            public void run () throws Exception {
+               parse('i', text);
+            }
+         });
+   }//end testBadInt
+
+   public static void testDates () throws Exception {
+      long day = time(2009, 3, 7, 0, 0, 0);
+      Check.equal(new Date(day), parse('d', "3/7/2009"), "M/D/YYYY");
+      Check.equal(new Date(day), parse('d', "03/07/2009"), "MM/DD/YYYY");
+      Check.equal(new Date(day), parse('d', "2009-03-07"), "YYYY-MM-DD");
+      Check.equal(new Date(time(2012, 12, 31, 0, 0, 0)), parse('d', "12/31/2012"), "month before day");
+   }//end testDates
+
+   public static void testTimestamps () throws Exception {
+      Check.equal(new Timestamp(time(2009, 3, 7, 14, 5, 9)), parse('t', "3/7/2009 14:05:09"), "with seconds");
+      Check.equal(new Timestamp(time(2009, 3, 7, 14, 5, 0)), parse('t', "3/7/2009 14:05"), "without seconds");
+      Check.equal(new Timestamp(time(2009, 3, 7, 14, 5, 9)), parse('t', "2009-03-07 14:05:09.123"), "fraction ignored");
+      Check.equal(new Timestamp(time(2009, 3, 7, 14, 5, 9)), parse('t', "2009-03-07 14:05:09+02"), "zone ignored");
+      Check.equal(new Timestamp(time(2009, 3, 7, 0, 0, 0)), parse('t', "2009-03-07"), "date only");
+   }//end testTimestamps
+
+   public static void testCalendarReused () throws Exception {
+      Calendar calendar = new GregorianCalendar();
+      byte[] first = "2009-03-07 14:05:09".getBytes(StandardCharsets.UTF_8);
+      byte[] second = "1/2/2010".getBytes(StandardCharsets.UTF_8);
+      BulkLoader.parseTime(first, first.length, calendar);
+      Check.equal(time(2010, 1, 2, 0, 0, 0), BulkLoader.parseTime(second, second.length, calendar),
+                  "nothing left over from the previous field");
+   }//end testCalendarReused
+
+   public static void testBadTime () {
+      for (final String text : new String[] { "", "2009", "3/7", "sometime" })
+         Check.fails(IOException.class, "'" + text + "'", new Check.Failing() {
+            public void run () throws Exception {
+               parse('t', text);
+            }
+         });
+   }//end testBadTime
+
+   public static void testStrings () throws Exception {
+      Check.equal("hello", parse('s', "hello"), "text");
+      Check.equal("", parse('s', ""), "empty");
+      Check.equal("café", parse('s', "café"), "UTF-8");
+   }//end testStrings
+}//end BulkLoaderTest
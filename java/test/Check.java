@@ -0,0 +1,99 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A minimal unit test harness in the spirit of Bench: every public static
+ * method of a test class whose name starts with "test" is one test, and a
+ * failed check throws an AssertionError.  A test passes if it returns.
+ */
+public class Check {
+
+   /**
+    * Code expected to throw.
+    */
+   public interface Failing {
+      void run () throws Exception;
+   }
+
+   public static void that (boolean condition, String what) {
+      if (!condition)
+         throw new AssertionError(what);
+   }
+
+   public static void equal (long expected, long actual, String what) {
+      if (expected != actual)
+         throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+   }
+
+   public static void equal (Object expected, Object actual, String what) {
+      if (expected == null ? actual != null : !expected.equals(actual))
+         throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+   }
+
+   public static void equal (int[] expected, int[] actual, String what) {
+      if (!Arrays.equals(expected, actual))
+         throw new AssertionError(what + ": expected " + Arrays.toString(expected) + ", got " + Arrays.toString(actual));
+   }
+
+   /**
+    * Checks that code throws an exception of a given type.
+    */
+   public static void fails (Class<? extends Throwable> type, String what, Failing code) {
+      try{
+         code.run();
+      }catch (Throwable e){
+         if (type.isInstance(e))
+            return;
+         throw new AssertionError(what + ": expected " + type.getSimpleName() + ", got " + e);
+      }//end try
+      throw new AssertionError(what + ": expected " + type.getSimpleName() + ", nothing thrown");
+   }//end fails
+
+   /**
+    * Runs the tests of some classes and prints one line per failure.
+    *
+    * @return the number of failed tests
+    */
+   public static int run (Class<?>... classes) {
+      int tests = 0;
+      int failed = 0;
+      for (Class<?> c : classes){
+         Method[] methods = c.getDeclaredMethods();
+         // getDeclaredMethods() has no order
+         Arrays.sort(methods, new Comparator<Method>() {
+            public int compare (Method a, Method b) {
+               return a.getName().compareTo(b.getName());
+            }
+         });
+         for (Method m : methods){
+            int mod = m.getModifiers();
+            if (!m.getName().startsWith("test") || !Modifier.isStatic(mod) || !Modifier.isPublic(mod)
+                || m.getParameterTypes().length != 0)
+               continue;
+            ++tests;
+            try{
+               m.invoke(null);
+            }catch (InvocationTargetException e){
+               ++failed;
+               Throwable cause = e.getCause();
+               System.out.println("FAIL " + c.getName() + "." + m.getName() + ": " + cause);
+               if (!(cause instanceof AssertionError))
+                  cause.printStackTrace(System.out);
+            }catch (IllegalAccessException e){
+               ++failed;
+               System.out.println("FAIL " + c.getName() + "." + m.getName() + ": " + e);
+            }//end try
+         }//end for
+      }//end for
+      System.out.println(tests + " tests, " + failed + " failed");
+      return failed;
+   }//end run
+}//end Check
@@ -0,0 +1,160 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tests of the snapshot file format: what is written is what is mapped,
+ * and damaged files are refused.
+ */
+public class GraphSnapshotTest {
+
+   private static File tempFile () throws IOException {
+      File file = File.createTempFile("snapshot", ".snap");
+      file.deleteOnExit();
+      new File(file.getPath() + ".tmp").deleteOnExit();
+      return file;
+   }//end tempFile
+
+   private static byte[] utf8 (String s) {
+      return s.getBytes(StandardCharsets.UTF_8);
+   }
+
+   private static SocialGraph graph () {
+      SocialGraph.Builder builder = new SocialGraph.Builder(16);
+      builder.addEdge(0, 1);
+      builder.addEdge(1, 2);
+      builder.addEdge(2, 4);
+      builder.addEdge(0, 4);
+      return builder.build();
+   }//end graph
+
+   private static int[] neighbors (SocialGraph graph, int vertex) {
+      int[] neighbors = new int[graph.degree(vertex)];
+      for (int i = 0; i < neighbors.length; ++i)
+         neighbors[i] = graph.neighbor(vertex, i);
+      Arrays.sort(neighbors);
+      return neighbors;
+   }//end neighbors
+
+   public static void testRoundTrip () throws Exception {
+      SocialGraph graph = graph();
+      // userNo 3 has no user, userNo 5 is a user without connections
+      byte[][] names = { utf8("alice"), utf8("bob"), utf8("zoë"), null, utf8("dave"), utf8("eve") };
+      File file = tempFile();
+      GraphSnapshot.write(graph, names, 1234567890123L, file);
+      Check.that(!new File(file.getPath() + ".tmp").exists(), "temporary file renamed");
+
+      GraphSnapshot snapshot = GraphSnapshot.open(file);
+      Check.equal(1234567890123L, snapshot.watermark(), "watermark");
+      SocialGraph mapped = snapshot.graph();
+      Check.equal(graph.size(), mapped.size(), "size");
+      Check.equal(graph.adjacencyCount(), mapped.adjacencyCount(), "adjacency entries");
+      for (int v = 0; v < graph.size(); ++v)
+         Check.equal(neighbors(graph, v), neighbors(mapped, v), "neighbors of " + v);
+      Check.equal(2, mapped.distance(1, 4, 3), "searches the mapped arrays");
+
+      Check.equal("alice", snapshot.userId(0), "first user");
+      Check.equal("zoë", snapshot.userId(2), "UTF-8 user");
+      Check.equal(null, snapshot.userId(3), "no such userNo");
+      Check.equal("dave", snapshot.userId(4), "user after a gap");
+      Check.equal("eve", snapshot.userId(5), "last user");
+      Check.equal(null, snapshot.userId(6), "past the last user");
+      Check.equal(null, snapshot.userId(-1), "negative userNo");
+
+      // the overlay grows on top of the mapping
+      SocialGraph more = mapped.withEdges(new int[] { 3 }, new int[] { 5 }, 1);
+      Check.equal(1, more.distance(3, 5, 1), "overlay on the mapped graph");
+   }//end testRoundTrip
+
+   public static void testReplace () throws Exception {
+      File file = tempFile();
+      byte[][] names = { utf8("a"), utf8("b"), utf8("c"), utf8("d"), utf8("e") };
+      GraphSnapshot.write(graph(), names, 1, file);
+      GraphSnapshot old = GraphSnapshot.open(file);
+
+      SocialGraph.Builder builder = new SocialGraph.Builder(16);
+      builder.addEdge(0, 1);
+      GraphSnapshot.write(builder.build(), new byte[][] { utf8("x"), utf8("y") }, 2, file);
+      GraphSnapshot replaced = GraphSnapshot.open(file);
+      Check.equal(2, replaced.watermark(), "new watermark");
+      Check.equal(2, replaced.graph().size(), "new graph");
+      Check.equal("y", replaced.userId(1), "new names");
+      Check.equal(null, replaced.userId(2), "no old names");
+
+      Check.equal(1, old.watermark(), "old mapping still readable");
+      Check.equal("e", old.userId(4), "old names still readable");
+      Check.equal(2, old.graph().distance(1, 4, 3), "old graph still readable");
+   }//end testReplace
+
+   public static void testEmpty () throws Exception {
+      File file = tempFile();
+      GraphSnapshot.write(new SocialGraph.Builder(16).build(), new byte[0][], 0, file);
+      GraphSnapshot snapshot = GraphSnapshot.open(file);
+      Check.equal(0, snapshot.graph().size(), "no vertices");
+      Check.equal(null, snapshot.userId(0), "no users");
+   }//end testEmpty
+
+   public static void testDamagedFilesRefused () throws Exception {
+      final File file = tempFile();
+      GraphSnapshot.write(graph(), new byte[][] { utf8("alice") }, 7, file);
+      long length = file.length();
+
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try{
+         raf.setLength(length - 1);
+      }finally{
+         raf.close();
+      }//end try
+      Check.fails(IOException.class, "truncated", new Check.Failing() {
+         public void run () throws Exception {
+            GraphSnapshot.open(file);
+         }
+      });
+
+      GraphSnapshot.write(graph(), new byte[][] { utf8("alice") }, 7, file);
+      raf = new RandomAccessFile(file, "rw");
+      try{
+         raf.seek(4);
+         raf.writeInt(GraphSnapshot.VERSION + 1);
+      }finally{
+         raf.close();
+      }//end try
+      Check.fails(IOException.class, "other version", new Check.Failing() {
+         public void run () throws Exception {
+            GraphSnapshot.open(file);
+         }
+      });
+
+      raf = new RandomAccessFile(file, "rw");
+      try{
+         raf.seek(0);
+         raf.writeInt(0x12345678);
+      }finally{
+         raf.close();
+      }//end try
+      Check.fails(IOException.class, "not a snapshot", new Check.Failing() {
+         public void run () throws Exception {
+            GraphSnapshot.open(file);
+         }
+      });
+
+      raf = new RandomAccessFile(file, "rw");
+      try{
+         raf.setLength(3);
+      }finally{
+         raf.close();
+      }//end try
+      Check.fails(IOException.class, "shorter than the header", new Check.Failing() {
+         public void run () throws Exception {
+            GraphSnapshot.open(file);
+         }
+      });
+   }//end testDamagedFilesRefused
+}//end GraphSnapshotTest
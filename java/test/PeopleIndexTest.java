@@ -0,0 +1,85 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests of the trigrams and the ranking of PeopleIndex.
+ */
+public class PeopleIndexTest {
+
+   private static PeopleIndex index () {
+      PeopleIndex index = new PeopleIndex();
+      index.add("jdoe  ", "John Doe  ", "jdoe@example.com");
+      index.add("jsmith", "Jane Smith", "jane@example.com");
+      index.add("bjohnson", "Bob Johnson", null);
+      index.add("mjones", "Mary Jones", "mary@example.com");
+      index.add("zed", null, null);
+      return index;
+   }//end index
+
+   private static String[] ids (List<String[]> results) {
+      String[] ids = new String[results.size()];
+      for (int i = 0; i < ids.length; ++i)
+         ids[i] = results.get(i)[1];
+      return ids;
+   }//end ids
+
+   public static void testTrigrams () {
+      HashSet<String> word = PeopleIndex.trigrams("Jo", false);
+      Check.equal(new HashSet<String>(Arrays.asList("  j", " jo", "jo ")), word, "padded trigrams");
+      HashSet<String> query = PeopleIndex.trigrams("Jo", true);
+      Check.equal(new HashSet<String>(Arrays.asList(" jo", "jo ")), query, "query leaves out the first trigram");
+      Check.equal(new HashSet<String>(Arrays.asList("  x", " x ")), PeopleIndex.trigrams("x", true), "one letter query");
+      HashSet<String> words = PeopleIndex.trigrams("a.b", false);
+      Check.that(words.contains("  a") && words.contains("  b") && !words.contains("a.b"), "split at punctuation");
+      Check.equal(0, PeopleIndex.trigrams(" -- ", true).size(), "no words");
+   }//end testTrigrams
+
+   public static void testPrefixMatchesFirst () {
+      PeopleIndex index = index();
+      Check.equal(5, index.size(), "size");
+      List<String[]> results = index.search("Jo", 10);
+      HashSet<String> found = new HashSet<String>(Arrays.asList(ids(results)));
+      Check.that(found.containsAll(Arrays.asList("jdoe", "bjohnson", "mjones")), "every word starting with jo: " + found);
+      Check.that(!found.contains("jsmith"), "no match for jsmith");
+      Check.equal("John Doe", results.get(0)[0], "name trimmed");
+      Check.equal("jdoe", results.get(0)[1], "id trimmed");
+      Check.equal("jdoe@example.com", results.get(0)[2], "email");
+   }//end testPrefixMatchesFirst
+
+   public static void testIdPrefix () {
+      List<String[]> results = index().search("mjo", 10);
+      Check.equal("mjones", results.get(0)[1], "user id prefix");
+      Check.equal("", index().search("zed", 1).get(0)[0], "missing name is empty");
+   }//end testIdPrefix
+
+   public static void testFuzzyMatch () {
+      // a misspelling is no prefix, but shares enough trigrams
+      List<String[]> results = index().search("Jonson", 10);
+      Check.that(results.size() > 0, "typo matches");
+      Check.equal("bjohnson", results.get(0)[1], "closest name first");
+      Check.equal(0, index().search("qqqq", 10).size(), "nothing similar");
+   }//end testFuzzyMatch
+
+   public static void testLimit () {
+      PeopleIndex index = index();
+      List<String[]> all = index.search("jo", 10);
+      List<String[]> two = index.search("jo", 2);
+      Check.equal(2, two.size(), "limited");
+      Check.equal(Arrays.asList(ids(all)).subList(0, 2), Arrays.asList(ids(two)), "limit keeps the best");
+      Check.equal(0, index.search("jo", 0).size(), "limit of 0");
+      Check.equal(0, index.search("   ", 10).size(), "blank query");
+   }//end testLimit
+
+   public static void testDuplicatesIgnored () {
+      PeopleIndex index = index();
+      index.add("jdoe", "Someone Else", "else@example.com");
+      Check.equal(5, index.size(), "size unchanged");
+      Check.equal(0, index.search("someone", 10).size(), "second entry not indexed");
+   }//end testDuplicatesIgnored
+}//end PeopleIndexTest
@@ -0,0 +1,125 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests of the mutual friend counting and ranking of Recommender.
+ */
+public class RecommenderTest {
+
+   public static void testCountsAddAndGet () {
+      Recommender.Counts counts = new Recommender.Counts(2);
+      int capacity = counts.capacity();
+      HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+      Random random = new Random(7);
+      for (int i = 0; i < 5000; ++i){
+         int key = random.nextInt(1000);
+         int delta = 1 + random.nextInt(3);
+         counts.add(key, delta);
+         Integer before = expected.get(key);
+         expected.put(key, (before == null ? 0 : before) + delta);
+      }//end for
+      Check.that(counts.capacity() > capacity, "grown past its first capacity");
+      Check.that(counts.size() * 2 <= counts.capacity(), "at most half full");
+      Check.equal(expected.size(), counts.size(), "size");
+      for (int key = 0; key < 1000; ++key){
+         Integer want = expected.get(key);
+         Check.equal(want == null ? 0 : want, counts.get(key), "count of " + key);
+      }//end for
+      Check.equal(0, counts.get(5000), "absent key");
+
+      int found = 0;
+      for (int slot = 0; slot < counts.capacity(); ++slot){
+         int key = counts.keyAt(slot);
+         if (key < 0)
+            continue;
+         ++found;
+         Check.equal(expected.get(key).intValue(), counts.valueAt(slot), "value in slot of " + key);
+      }//end for
+      Check.equal(expected.size(), found, "occupied slots");
+   }//end testCountsAddAndGet
+
+   public static void testCountsAddAll () {
+      Recommender.Counts a = new Recommender.Counts(4);
+      Recommender.Counts b = new Recommender.Counts(4);
+      a.add(1, 1);
+      a.add(2, 2);
+      b.add(2, 3);
+      b.add(40, 4);
+      a.addAll(b);
+      Check.equal(3, a.size(), "merged size");
+      Check.equal(1, a.get(1), "only in a");
+      Check.equal(5, a.get(2), "in both");
+      Check.equal(4, a.get(40), "only in b");
+      Check.equal(2, b.size(), "b unchanged");
+   }//end testCountsAddAll
+
+   public static void testTopKKeepsBest () {
+      Recommender.TopK top = new Recommender.TopK(3);
+      top.offer(10, 1, 0, 1f);
+      top.offer(11, 5, 0, 5f);
+      top.offer(12, 2, 0, 2f);
+      top.offer(13, 4, 0, 4f);
+      top.offer(14, 0, 3, 3f);
+      top.offer(15, 1, 0, 1f);
+      List<Recommender.Recommendation> best = top.drain();
+      Check.equal(3, best.size(), "kept");
+      Check.equal(11, best.get(0).userNo, "best");
+      Check.equal(13, best.get(1).userNo, "second");
+      Check.equal(14, best.get(2).userNo, "third");
+      Check.equal(3, best.get(2).sharedAffiliations, "shared affiliations kept");
+      Check.equal(0, best.get(2).mutualFriends, "mutual friends kept");
+      Check.equal(0, top.drain().size(), "drained");
+   }//end testTopKKeepsBest
+
+   public static void testTopKTiesGoToLowerUser () {
+      Recommender.TopK top = new Recommender.TopK(2);
+      top.offer(30, 2, 0, 2f);
+      top.offer(20, 2, 0, 2f);
+      top.offer(40, 2, 0, 2f);
+      top.offer(10, 2, 0, 2f);
+      List<Recommender.Recommendation> best = top.drain();
+      Check.equal(10, best.get(0).userNo, "lowest userNo first");
+      Check.equal(20, best.get(1).userNo, "then the next lowest");
+
+      Recommender.TopK few = new Recommender.TopK(5);
+      few.offer(3, 1, 0, 1f);
+      few.offer(1, 1, 0, 1f);
+      best = few.drain();
+      Check.equal(2, best.size(), "fewer candidates than k");
+      Check.equal(1, best.get(0).userNo, "ordered when not full");
+   }//end testTopKTiesGoToLowerUser
+
+   public static void testRecommend () throws Exception {
+      // 0 knows 1, 2 and 3; 4 knows 1, 2 and 3; 5 knows 1; 6 knows 2 and 3
+      SocialGraph.Builder builder = new SocialGraph.Builder(16);
+      for (int friend = 1; friend <= 3; ++friend){
+         builder.addEdge(0, friend);
+         builder.addEdge(4, friend);
+      }//end for
+      builder.addEdge(5, 1);
+      builder.addEdge(6, 2);
+      builder.addEdge(6, 3);
+      SocialGraph graph = builder.build();
+
+      // without a boost no affiliations are read, so no database is needed
+      Recommender recommender = Recommender.load(null, 0);
+      List<Recommender.Recommendation> best = recommender.recommend(graph, 0, 10);
+      Check.equal(3, best.size(), "friends of friends only");
+      Check.equal(4, best.get(0).userNo, "most mutual friends first");
+      Check.equal(3, best.get(0).mutualFriends, "mutual friends of 4");
+      Check.equal(6, best.get(1).userNo, "then 6");
+      Check.equal(2, best.get(1).mutualFriends, "mutual friends of 6");
+      Check.equal(5, best.get(2).userNo, "then 5");
+      Check.equal(1, best.get(2).mutualFriends, "mutual friends of 5");
+
+      Check.equal(1, recommender.recommend(graph, 0, 1).size(), "k limits the results");
+      Check.equal(0, recommender.recommend(graph, 9, 10).size(), "user without connections");
+      Check.equal(0, recommender.recommend(graph, 0, 0).size(), "k of 0");
+   }//end testRecommend
+}//end RecommenderTest
@@ -0,0 +1,163 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Tests of the column typing of ResultTable, read from an in-memory
+ * ResultSet.
+ */
+public class ResultTableTest {
+
+   /**
+    * A forward-only ResultSet over rows of Java values, implementing only
+    * what ResultTable.read calls.
+    */
+   private static ResultSet resultSet (final String[] names, final int[] types, final Object[][] rows) {
+      final ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(
+         ResultSetMetaData.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+            public Object invoke (Object proxy, Method m, Object[] args) {
+               if (m.getName().equals("getColumnCount"))
+                  return names.length;
+               if (m.getName().equals("getColumnName"))
+                  return names[(Integer) args[0] - 1];
+               if (m.getName().equals("getColumnType"))
+                  return types[(Integer) args[0] - 1];
+               throw new UnsupportedOperationException(m.getName());
+            }
+         });
+      return (ResultSet) Proxy.newProxyInstance(
+         ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+            private int _row = -1;
+            private boolean _wasNull = false;
+
+            public Object invoke (Object proxy, Method m, Object[] args) {
+               String name = m.getName();
+               if (name.equals("getMetaData"))
+                  return meta;
+               if (name.equals("next"))
+                  return ++this._row < rows.length;
+               if (name.equals("wasNull"))
+                  return this._wasNull;
+               Object value = rows[this._row][(Integer) args[0] - 1];
+               this._wasNull = value == null;
+               if (name.equals("getInt"))
+                  return value == null ? 0 : ((Number) value).intValue();
+               if (name.equals("getLong"))
+                  return value == null ? 0L : ((Number) value).longValue();
+               if (name.equals("getTimestamp"))
+                  return (Timestamp) value;
+               if (name.equals("getString"))
+                  return value == null ? null : value.toString();
+               throw new UnsupportedOperationException(name);
+            }
+         });
+   }//end resultSet
+
+   private static Timestamp timestamp (String text) {
+      return Timestamp.valueOf(text);
+   }
+
+   private static ResultTable table () throws Exception {
+      String[] names = { "userNo", "seq", "sendTime", "status", "small" };
+      int[] types = { Types.INTEGER, Types.BIGINT, Types.TIMESTAMP, Types.CHAR, Types.SMALLINT };
+      Object[][] rows = new Object[40][];
+      for (int r = 0; r < rows.length; ++r)
+         rows[r] = new Object[] { r, 10000000000L + r, timestamp("2020-01-02 03:04:05"), "Accept   ", r % 3 };
+      rows[1] = new Object[] { null, null, null, null, null };
+      rows[2] = new Object[] { -5, -1L, timestamp("1969-12-31 23:59:59.25"), "  Reject", 1 };
+      Timestamp micros = timestamp("2020-01-02 03:04:05");
+      micros.setNanos(123456000);
+      rows[3][2] = micros;
+      return ResultTable.read(resultSet(names, types, rows));
+   }//end table
+
+   public static void testShape () throws Exception {
+      ResultTable table = table();
+      Check.equal(40, table.rows(), "rows, past the first capacity");
+      Check.equal(5, table.columns(), "columns");
+      Check.equal("sendTime", table.columnName(2), "column name");
+      Check.that(!table.isEmpty(), "not empty");
+      Check.that(ResultTable.EMPTY.isEmpty(), "EMPTY is empty");
+      Check.equal(0, ResultTable.EMPTY.columns(), "EMPTY has no columns");
+   }//end testShape
+
+   public static void testTypedColumns () throws Exception {
+      ResultTable table = table();
+      Check.equal(39, table.getInt(39, 0), "int column");
+      Check.equal(-5, table.getInt(2, 0), "negative int");
+      Check.equal(10000000039L, table.getLong(39, 1), "bigint column");
+      Check.equal(-1L, table.getLong(2, 1), "negative bigint");
+      Check.equal(2, table.getInt(5, 4), "smallint column read as int");
+      Check.equal(39L, table.getLong(39, 0), "int column read as long");
+      Check.equal("10000000039", table.getString(39, 1), "bigint as text");
+      Check.equal("-5", table.getString(2, 0), "int as text");
+   }//end testTypedColumns
+
+   public static void testTimestamps () throws Exception {
+      ResultTable table = table();
+      Check.equal(timestamp("2020-01-02 03:04:05"), table.getTimestamp(0, 2), "timestamp");
+      Check.equal("2020-01-02 03:04:05", table.getString(0, 2), "whole seconds print without a fraction");
+      Timestamp micros = timestamp("2020-01-02 03:04:05.123456");
+      Check.equal(micros, table.getTimestamp(3, 2), "microseconds kept");
+      Check.equal("2020-01-02 03:04:05.123456", table.getString(3, 2), "fraction printed");
+      Check.equal(timestamp("1969-12-31 23:59:59.25"), table.getTimestamp(2, 2), "before 1970");
+      Check.equal(timestamp("2020-01-02 03:04:05").getTime() * 1000L, table.getLong(0, 2), "timestamp as micros");
+   }//end testTimestamps
+
+   public static void testStrings () throws Exception {
+      ResultTable table = table();
+      Check.equal("Accept", table.getString(0, 3), "trailing blanks trimmed");
+      Check.equal("Reject", table.getString(2, 3), "leading blanks trimmed");
+      Check.that(table.getString(0, 3) == table.getString(39, 3), "repeated values pooled");
+   }//end testStrings
+
+   public static void testNulls () throws Exception {
+      ResultTable table = table();
+      for (int c = 0; c < table.columns(); ++c){
+         Check.that(table.isNull(1, c), "null in column " + c);
+         Check.that(!table.isNull(0, c), "no null in column " + c);
+         Check.equal(null, table.getString(1, c), "null as text in column " + c);
+      }//end for
+      Check.equal(0, table.getInt(1, 0), "null int");
+      Check.equal(0L, table.getLong(1, 1), "null bigint");
+      Check.equal(null, table.getTimestamp(1, 2), "null timestamp");
+   }//end testNulls
+
+   public static void testSelect () throws Exception {
+      ResultTable table = table();
+      ResultTable picked = table.select(new int[] { 39, 1, 2 }, 3, 0);
+      Check.equal(3, picked.rows(), "selected rows");
+      Check.equal(2, picked.columns(), "selected columns");
+      Check.equal("status", picked.columnName(0), "columns reordered");
+      Check.equal(39, picked.getInt(0, 1), "rows reordered");
+      Check.equal("Reject", picked.getString(2, 0), "string column copied");
+      Check.that(picked.isNull(1, 0) && picked.isNull(1, 1), "nulls follow their rows");
+      Check.that(!picked.isNull(2, 1), "no stray nulls");
+   }//end testSelect
+
+   public static void testCursor () throws Exception {
+      ResultTable table = table();
+      ResultTable.Cursor cursor = table.cursor();
+      int rows = 0;
+      long sum = 0;
+      while (cursor.next()){
+         Check.equal(rows, cursor.row(), "row number");
+         if (!cursor.isNull(0))
+            sum += cursor.getInt(0);
+         ++rows;
+      }//end while
+      Check.equal(40, rows, "every row visited");
+      Check.equal(780 - 1 - 2 - 5, sum, "sum of the int column");
+      Check.that(!cursor.next(), "stays after the last row");
+      Check.that(!ResultTable.EMPTY.cursor().next(), "EMPTY has no rows");
+   }//end testCursor
+}//end ResultTableTest
@@ -0,0 +1,158 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests of the bidirectional searches and the overlay of SocialGraph.
+ */
+public class SocialGraphTest {
+
+   // 0 - 1 - ... - length
+   private static SocialGraph path (int length) {
+      SocialGraph.Builder builder = new SocialGraph.Builder(16);
+      for (int u = 0; u < length; ++u)
+         builder.addEdge(u, u + 1);
+      return builder.build();
+   }//end path
+
+   public static void testDistanceAlongPath () {
+      SocialGraph graph = path(4);
+      Check.equal(5, graph.size(), "size");
+      Check.equal(8, graph.adjacencyCount(), "adjacency entries");
+      Check.equal(0, graph.distance(2, 2, 0), "distance to itself");
+      Check.equal(1, graph.distance(0, 1, 3), "adjacent");
+      Check.equal(4, graph.distance(0, 4, 4), "across the path");
+      Check.equal(4, graph.distance(4, 0, 4), "across the path backwards");
+      Check.equal(-1, graph.distance(0, 4, 3), "beyond maxHops");
+      Check.that(graph.withinHops(1, 3, 2), "within 2 hops");
+      Check.that(!graph.withinHops(1, 4, 2), "not within 2 hops");
+   }//end testDistanceAlongPath
+
+   public static void testShortestPath () {
+      SocialGraph graph = path(4);
+      Check.equal(Arrays.asList(0, 1, 2, 3, 4), graph.shortestPath(0, 4, 4), "path");
+      Check.equal(Arrays.asList(3, 2, 1), graph.shortestPath(3, 1, 2), "path backwards");
+      Check.equal(Arrays.asList(2), graph.shortestPath(2, 2, 0), "path to itself");
+      Check.equal(null, graph.shortestPath(0, 4, 3), "path beyond maxHops");
+
+      // a ring of 6 has one shortest way round to the opposite vertex
+      SocialGraph.Builder builder = new SocialGraph.Builder(16);
+      for (int u = 0; u < 6; ++u)
+         builder.addEdge(u, (u + 1) % 6);
+      SocialGraph ring = builder.build();
+      Check.equal(3, ring.distance(0, 3, 6), "ring distance");
+      Check.equal(Arrays.asList(0, 5, 4), ring.shortestPath(0, 4, 6), "shorter way round");
+   }//end testShortestPath
+
+   public static void testDisconnected () {
+      SocialGraph.Builder builder = new SocialGraph.Builder(16);
+      builder.addEdge(0, 1);
+      builder.addEdge(3, 4);
+      builder.addEdge(2, 2);
+      builder.addEdge(-1, 0);
+      SocialGraph graph = builder.build();
+      Check.equal(0, graph.degree(2), "self edge ignored");
+      Check.equal(1, graph.degree(0), "negative end ignored");
+      Check.equal(0, graph.degree(7), "degree beyond size");
+      Check.equal(-1, graph.distance(0, 4, 10), "other component");
+      Check.equal(null, graph.shortestPath(1, 3, 10), "no path to other component");
+      Check.equal(-1, graph.distance(0, 2, 10), "isolated vertex");
+      Check.equal(-1, graph.distance(0, 9, 10), "vertex beyond size");
+   }//end testDisconnected
+
+   public static void testWithEdges () {
+      SocialGraph graph = path(4);
+      SocialGraph same = graph.withEdges(new int[] { 1, 2, 6 }, new int[] { 2, 3, 6 }, 3);
+      Check.that(same == graph, "only known edges and self edges: same graph");
+
+      SocialGraph more = graph.withEdges(new int[] { 0, 0, 4, 1 }, new int[] { 4, 4, 7, 2 }, 4);
+      Check.equal(2, more.overlayEdges(), "repeated and known edges ignored");
+      Check.equal(8, more.size(), "size grows with the overlay");
+      Check.equal(1, more.distance(0, 4, 1), "shortcut through the overlay");
+      Check.equal(2, more.distance(0, 7, 4), "new vertex through the overlay");
+      Check.equal(Arrays.asList(0, 4, 7), more.shortestPath(0, 7, 4), "path through the overlay");
+      Check.equal(2, more.degree(0), "degree counts the overlay");
+      Check.equal(4, more.neighbor(0, 1), "overlay neighbors follow the arrays");
+      Check.equal(12, more.adjacencyCount(), "adjacency entries with the overlay");
+
+      Check.equal(4, graph.distance(0, 4, 4), "original graph unchanged");
+      Check.equal(-1, graph.distance(0, 7, 4), "original graph has no new vertex");
+   }//end testWithEdges
+
+   /**
+    * Compares the bidirectional searches with a plain breadth-first search
+    * over a random graph, half of it in the overlay.
+    */
+   public static void testMatchesPlainSearch () {
+      Random random = new Random(42);
+      int n = 300;
+      List<List<Integer>> adjacency = new ArrayList<List<Integer>>();
+      for (int u = 0; u < n; ++u)
+         adjacency.add(new ArrayList<Integer>());
+      SocialGraph.Builder builder = new SocialGraph.Builder(16);
+      int[] lo = new int[n];
+      int[] hi = new int[n];
+      int overlay = 0;
+      for (int e = 0; e < 2 * n; ++e){
+         int u = random.nextInt(n);
+         int v = random.nextInt(n);
+         if (u == v || adjacency.get(u).contains(v))
+            continue;
+         adjacency.get(u).add(v);
+         adjacency.get(v).add(u);
+         if (e % 2 == 0 || overlay == lo.length){
+            builder.addEdge(u, v);
+         }else{
+            lo[overlay] = u;
+            hi[overlay] = v;
+            ++overlay;
+         }//end if
+      }//end for
+      SocialGraph graph = builder.build().withEdges(lo, hi, overlay);
+
+      for (int from = 0; from < n; from += 7){
+         int[] expected = distances(adjacency, from);
+         for (int to = 0; to < n; ++to){
+            for (int maxHops : new int[] { 2, 100 }){
+               int want = expected[to] <= maxHops ? expected[to] : -1;
+               Check.equal(want, graph.distance(from, to, maxHops), "distance " + from + " -> " + to + " within " + maxHops);
+               List<Integer> path = graph.shortestPath(from, to, maxHops);
+               if (want < 0){
+                  Check.equal(null, path, "no path " + from + " -> " + to);
+                  continue;
+               }//end if
+               Check.equal(want + 1, path.size(), "path length " + from + " -> " + to);
+               Check.equal(from, path.get(0).intValue(), "path start");
+               Check.equal(to, path.get(path.size() - 1).intValue(), "path end");
+               for (int i = 1; i < path.size(); ++i)
+                  Check.that(adjacency.get(path.get(i - 1)).contains(path.get(i)), "path " + path + " follows edges");
+            }//end for
+         }//end for
+      }//end for
+   }//end testMatchesPlainSearch
+
+   // hops from one vertex to every other one, Integer.MAX_VALUE if unreachable
+   private static int[] distances (List<List<Integer>> adjacency, int from) {
+      int[] dist = new int[adjacency.size()];
+      Arrays.fill(dist, Integer.MAX_VALUE);
+      dist[from] = 0;
+      int[] queue = new int[adjacency.size()];
+      int head = 0, tail = 0;
+      queue[tail++] = from;
+      while (head < tail){
+         int u = queue[head++];
+         for (int v : adjacency.get(u))
+            if (dist[v] == Integer.MAX_VALUE){
+               dist[v] = dist[u] + 1;
+               queue[tail++] = v;
+            }//end if
+      }//end while
+      return dist;
+   }//end distances
+}//end SocialGraphTest
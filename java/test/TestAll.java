@@ -0,0 +1,23 @@
+/*
+ * Sebastian Garcia - 862117996
+ * Hamza Syed - 862097875
+ *
+ */
+
+/**
+ * Runs every unit test; none of them needs a database.
+ *
+ * usage: java TestAll
+ */
+public class TestAll {
+   public static void main (String[] args) {
+      int failed = Check.run(
+         SocialGraphTest.class,
+         RecommenderTest.class,
+         PeopleIndexTest.class,
+         BulkLoaderTest.class,
+         GraphSnapshotTest.class,
+         ResultTableTest.class);
+      System.exit(failed == 0 ? 0 : 1);
+   }//end main
+}//end TestAll
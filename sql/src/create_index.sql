@@ -5,13 +5,36 @@
 
 CREATE INDEX index_usr on USR(userId, password, email ,name, dateOfBirth);
 
-CREATE INDEX index_work ON WORK_EXPR(userId, company, role, location, startDate, endDate);
+CREATE INDEX index_work ON WORK_EXPR(userNo, company, role, location, startDate, endDate);
 
-CREATE INDEX index_edu ON EDUCATIONAL_DETAILS(userId, instituitionName, major, degree, startdate, enddate);
+CREATE INDEX index_edu ON EDUCATIONAL_DETAILS(userNo, instituitionName, major, degree, startdate, enddate);
 
-CREATE INDEX index_msg ON MESSAGE(msgId, senderId, receiverId, contents, sendTime, deleteStatus, status);
+/* inbox and outbox pages are keyset range scans over one user's visible
+   messages ordered by (sendTime, msgId) */
+CREATE INDEX index_msg_inbox ON MESSAGE(receiverNo, sendTime, msgId) WHERE deleteStatus <> 2 AND deleteStatus <> 3;
+CREATE INDEX index_msg_outbox ON MESSAGE(senderNo, sendTime, msgId) WHERE deleteStatus <> 1 AND deleteStatus <> 3;
 
-CREATE INDEX index_conn ON CONNECTION_USR(userId, connectionId, status);
+/* a conversation is every message between one unordered pair of users,
+   paged by (sendTime, msgId) like the inbox */
+CREATE INDEX index_msg_pair ON MESSAGE(LEAST(senderNo, receiverNo), GREATEST(senderNo, receiverNo), sendTime, msgId);
+
+/* messages deleted by both parties, waiting for the Archiver */
+CREATE INDEX index_msg_deleted ON MESSAGE(sendTime, msgId) WHERE deleteStatus = 3;
+
+/* full-text message search; combined with the inbox/outbox indexes above
+   to restrict hits to the caller's visible messages */
+CREATE INDEX index_msg_search ON MESSAGE USING gin(search);
+
+CREATE INDEX index_conn ON CONNECTION_USR(userNo, connectionNo, status);
+
+/* reverse direction, so walks over connectionNo (CheckConnection) are index scans too */
+CREATE INDEX index_conn_rev ON CONNECTION_USR(connectionNo, userNo, status);
+
+/* the primary key covers friends by lo; this covers friends by hi */
+CREATE INDEX index_friend_rev ON FRIENDSHIP(hi, lo);
+
+/* rows accepted after a graph snapshot was written */
+CREATE INDEX index_friend_seq ON FRIENDSHIP(seq);
 /*CREATE INDEX index_usr_usrid ON USR(userId);
 CREATE INDEX index_usr_password ON USR(password);
 CREATE INDEX index_usr_email ON USR(email);
@@ -3,59 +3,222 @@
  * Hamza Syed - 862097875
 */
 
+/* Requires PostgreSQL 12 or 13.
+   - 12 or later: MESSAGE is partitioned (with a DEFAULT partition and a
+     primary key across partitions) and its search column is a generated
+     column.  Before 13 a partitioned table cannot have the BEFORE ROW
+     trigger that would otherwise fill it, so 12 is the oldest server
+     both work on.  create_message_partition also needs LIKE ... INCLUDING
+     GENERATED, new in 12.
+   - 13 or earlier: the bundled driver, java/lib/pg73jdbc3.jar, only
+     speaks version 2 of the frontend/backend protocol, which 14 removed.
+   Everything else used (SKIP LOCKED, txid_current_snapshot, RETURNING)
+   is older. */
+
 DROP TABLE WORK_EXPR;
 DROP TABLE EDUCATIONAL_DETAILS;
 DROP TABLE MESSAGE;
+DROP TABLE MESSAGE_ARCHIVE;
+DROP FUNCTION create_message_partition(date);
 DROP TABLE CONNECTION_USR;
+DROP TABLE CONNECTION_CHANGES;
+DROP FUNCTION log_connection_change();
+DROP TABLE FRIENDSHIP;
+DROP TABLE RECOMMENDATION;
+DROP TABLE RECOMMENDATION_STAGE;
 DROP TABLE USR;
+DROP SEQUENCE msg_id_seq;
 
 
+/* every user gets an integer surrogate key, userNo, which is what all
+   other tables reference; the login name userId only lives in USR */
 CREATE TABLE USR(
+	userNo serial NOT NULL,
 	userId varchar(30) UNIQUE NOT NULL, 
 	password varchar(30) NOT NULL,
 	email text NOT NULL,
-	name char(50),
+	name varchar(50),
 	dateOfBirth date,
-	Primary Key(userId)
+	Primary Key(userNo)
 );
 
 CREATE TABLE WORK_EXPR(
-	userId char(30) NOT NULL, 
+	userNo integer NOT NULL, 
 	company char(50) NOT NULL, 
 	role char(50) NOT NULL,
 	location char(50),
 	startDate date,
 	endDate date,
-	PRIMARY KEY(userId,company,role,startDate),
-	FOREIGN KEY(userId) REFERENCES USR(userId)
+	PRIMARY KEY(userNo,company,role,startDate),
+	FOREIGN KEY(userNo) REFERENCES USR(userNo)
 );
 
 CREATE TABLE EDUCATIONAL_DETAILS(
-	userId char(30) NOT NULL, 
+	userNo integer NOT NULL, 
 	instituitionName char(50) NOT NULL, 
 	major char(50) NOT NULL,
 	degree char(50) NOT NULL,
 	startdate date,
 	enddate date,
-	PRIMARY KEY(userId,major,degree),
-	FOREIGN KEY(userId) REFERENCES USR(userId)
+	PRIMARY KEY(userNo,major,degree),
+	FOREIGN KEY(userNo) REFERENCES USR(userNo)
 );
 
+/* partitioned by month of sendTime, so inbox and outbox pages (newest
+   first) only touch recent partitions and vacuum and index upkeep stay
+   proportional to recent traffic.  Partitions are made by
+   create_message_partition below: here for the coming months, by the
+   loaders for the months of the loaded messages, and by the application's
+   Archiver ahead of time.  Rows outside every month go to MESSAGE_DEFAULT
+   until the Archiver gives their month a partition.  The key includes
+   sendTime because unique constraints of a partitioned table must include
+   the partition key; msgIds are still unique since they come from
+   msg_id_seq.  search holds the words of contents for full-text message
+   search (GIN index in create_index.sql); it is a generated column, not
+   trigger-maintained, since a partitioned table has no BEFORE ROW
+   triggers before PostgreSQL 13 */
 CREATE TABLE MESSAGE(
-	msgId integer UNIQUE NOT NULL, 
-	senderId char(30) NOT NULL,
-	receiverId char(30) NOT NULL,
+	msgId integer NOT NULL, 
+	senderNo integer NOT NULL,
+	receiverNo integer NOT NULL,
 	contents char(500) NOT NULL,
-	sendTime timestamp,
+	sendTime timestamp NOT NULL,
+	deleteStatus integer,
+	status char(30) NOT NULL,
+	search tsvector GENERATED ALWAYS AS (to_tsvector('english', contents)) STORED,
+	PRIMARY KEY(msgId, sendTime)
+) PARTITION BY RANGE (sendTime);
+
+CREATE TABLE MESSAGE_DEFAULT PARTITION OF MESSAGE DEFAULT;
+
+/* creates the partition of MESSAGE for the month starting at first_day,
+   named message_yYYYYmMM, unless it exists.  A partition cannot be added
+   while MESSAGE_DEFAULT holds rows it would cover, so the month's rows are
+   moved out of DEFAULT into the new table before it is attached.  Returns
+   false if nothing was created: the partition exists (maybe made by
+   another session meanwhile), or rows of the month reached DEFAULT while
+   moving, in which case the move is undone and a later call retries */
+CREATE FUNCTION create_message_partition(first_day date) RETURNS boolean AS $$
+DECLARE
+	part text := 'message_y' || to_char(first_day, 'YYYY"m"MM');
+	next_month date := CAST(first_day + interval '1 month' AS date);
+BEGIN
+	IF to_regclass(part) IS NOT NULL THEN
+		RETURN false;
+	END IF;
+	EXECUTE format('CREATE TABLE %I (LIKE MESSAGE INCLUDING DEFAULTS INCLUDING GENERATED)', part);
+	EXECUTE format('WITH moved AS ( '
+		'DELETE FROM MESSAGE_DEFAULT WHERE sendTime >= %L AND sendTime < %L '
+		'RETURNING msgId, senderNo, receiverNo, contents, sendTime, deleteStatus, status) '
+		'INSERT INTO %I(msgId, senderNo, receiverNo, contents, sendTime, deleteStatus, status) '
+		'SELECT * FROM moved', first_day, next_month, part);
+	EXECUTE format('ALTER TABLE MESSAGE ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+		part, first_day, next_month);
+	RETURN true;
+EXCEPTION
+	WHEN duplicate_table OR check_violation THEN
+		RETURN false;
+END;
+$$ LANGUAGE plpgsql;
+
+/* this month and the two after it, as the Archiver keeps them */
+SELECT create_message_partition(CAST(date_trunc('month', now()) + n * interval '1 month' AS date))
+FROM generate_series(0, 2) AS n;
+
+/* messages deleted by both parties, and, only if a retention period is
+   configured (profnetwork.messageRetentionMonths), whole months past it,
+   moved out of MESSAGE by the Archiver.  The application never reads
+   this table back, so its rows are deleted as far as users can tell; no
+   indexes but the key */
+CREATE TABLE MESSAGE_ARCHIVE(
+	msgId integer NOT NULL,
+	senderNo integer NOT NULL,
+	receiverNo integer NOT NULL,
+	contents text NOT NULL,
+	sendTime timestamp NOT NULL,
 	deleteStatus integer,
 	status char(30) NOT NULL,
+	archivedAt timestamp NOT NULL DEFAULT now(),
 	PRIMARY KEY(msgId)
 );
 
+/* msgIds are reserved by the application in blocks of 1000 (one block per
+   nextval), so INCREMENT BY must match ProfNetwork.MSG_ID_BLOCK */
+CREATE SEQUENCE msg_id_seq INCREMENT BY 1000 START WITH 1;
+
 CREATE TABLE CONNECTION_USR(
-	userId char(30) NOT NULL, 
-	connectionId char(30) NOT NULL, 
+	userNo integer NOT NULL, 
+	connectionNo integer NOT NULL, 
 	status char(30) NOT NULL,
-	PRIMARY KEY(userId,connectionId),
-	FOREIGN KEY(userId) REFERENCES USR(userId)
+	PRIMARY KEY(userNo,connectionNo),
+	FOREIGN KEY(userNo) REFERENCES USR(userNo),
+	FOREIGN KEY(connectionNo) REFERENCES USR(userNo)
+);
+
+/* every request and status change of CONNECTION_USR, in commit-ish order
+   of seq; running applications poll it past their watermark to update
+   their graph and friend caches instead of rereading the tables */
+CREATE TABLE CONNECTION_CHANGES(
+	seq bigserial NOT NULL,
+	userNo integer NOT NULL,
+	connectionNo integer NOT NULL,
+	status char(30) NOT NULL,
+	changedAt timestamp NOT NULL DEFAULT now(),
+	PRIMARY KEY(seq)
+);
+
+CREATE FUNCTION log_connection_change() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP = 'INSERT' OR OLD.status IS DISTINCT FROM NEW.status THEN
+		INSERT INTO CONNECTION_CHANGES(userNo, connectionNo, status)
+		VALUES (NEW.userNo, NEW.connectionNo, NEW.status);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER connection_change_log
+AFTER INSERT OR UPDATE OF status ON CONNECTION_USR
+FOR EACH ROW EXECUTE PROCEDURE log_connection_change();
+
+/* accepted connections, one row per pair with lo < hi whichever side sent
+   the request; requests and rejections stay in CONNECTION_USR.  seq orders
+   the rows by insertion, so a graph snapshot only needs the rows after its
+   watermark to catch up */
+CREATE TABLE FRIENDSHIP(
+	lo integer NOT NULL,
+	hi integer NOT NULL,
+	seq bigserial NOT NULL,
+	PRIMARY KEY(lo,hi),
+	CHECK(lo < hi),
+	FOREIGN KEY(lo) REFERENCES USR(userNo),
+	FOREIGN KEY(hi) REFERENCES USR(userNo)
+);
+
+/* "people you may know", precomputed for every user by java Recommender;
+   rank 1 is the best candidate.  PeopleYouMayKnow serves these rows when a
+   user has any and ranks live otherwise */
+CREATE TABLE RECOMMENDATION(
+	userNo integer NOT NULL,
+	rank integer NOT NULL,
+	candidateNo integer NOT NULL,
+	mutualFriends integer NOT NULL,
+	sharedAffiliations integer NOT NULL,
+	score real NOT NULL,
+	PRIMARY KEY(userNo,rank),
+	FOREIGN KEY(userNo) REFERENCES USR(userNo),
+	FOREIGN KEY(candidateNo) REFERENCES USR(userNo)
+);
+
+/* where java Recommender writes a run before swapping it into
+   RECOMMENDATION in one transaction; empty between runs, and unlogged
+   since a crashed run is simply run again */
+CREATE UNLOGGED TABLE RECOMMENDATION_STAGE(
+	userNo integer NOT NULL,
+	rank integer NOT NULL,
+	candidateNo integer NOT NULL,
+	mutualFriends integer NOT NULL,
+	sharedAffiliations integer NOT NULL,
+	score real NOT NULL,
+	PRIMARY KEY(userNo,rank)
 );
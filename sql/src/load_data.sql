@@ -2,6 +2,7 @@
   Hamza Syed - 862097876
 */
 
+/* userNo is assigned by the serial default as the users are loaded */
 COPY USR(
 	userId,
 	password,
@@ -12,45 +13,88 @@ COPY USR(
 FROM 'USR.csv'
 DELIMITER ',' CSV HEADER;
 
+/* the other files name users by userId; they are staged as they are and
+   translated to userNo with a join against USR */
+CREATE TEMP TABLE WORK_CSV(
+    userId varchar(30),
+    company char(50),
+    role char(50),
+    location char(50),
+    startDate date,
+    endDate date
+);
 
-COPY WORK_EXPR(
-    userId,
-    company,
-    role,
-    location,
-    startDate,
-    endDate
-)
+COPY WORK_CSV
 FROM 'Work_Ex.csv'
 DELIMITER ','  CSV HEADER;
 
-COPY EDUCATIONAL_DETAILS(
-    userId,
-    instituitionName,
-    major,
-    degree,
-    startDate,
-    endDate
-)
+INSERT INTO WORK_EXPR(userNo, company, role, location, startDate, endDate)
+SELECT U.userNo, W.company, W.role, W.location, W.startDate, W.endDate
+FROM WORK_CSV W JOIN USR U ON U.userId = W.userId;
+
+CREATE TEMP TABLE EDU_CSV(
+    userId varchar(30),
+    instituitionName char(50),
+    major char(50),
+    degree char(50),
+    startDate date,
+    endDate date
+);
+
+COPY EDU_CSV
 FROM 'Edu_Det.csv'
 DELIMITER ',' CSV HEADER;
 
-COPY MESSAGE(
-    msgId,
-    senderId,
-    receiverId,
-    contents,
-    sendTime,
-    deleteStatus,
-    status
-)
+INSERT INTO EDUCATIONAL_DETAILS(userNo, instituitionName, major, degree, startdate, enddate)
+SELECT U.userNo, E.instituitionName, E.major, E.degree, E.startDate, E.endDate
+FROM EDU_CSV E JOIN USR U ON U.userId = E.userId;
+
+CREATE TEMP TABLE MESSAGE_CSV(
+    msgId integer,
+    senderId varchar(30),
+    receiverId varchar(30),
+    contents char(500),
+    sendTime timestamp,
+    deleteStatus integer,
+    status char(30)
+);
+
+COPY MESSAGE_CSV
 FROM 'Message.csv'
 DELIMITER ','  CSV HEADER;
 
-COPY CONNECTION_USR(
-    userId,
-    connectionId,
-    status
-)
+/* a partition for every month of the loaded messages, so none of them
+   land in MESSAGE_DEFAULT */
+SELECT create_message_partition(CAST(month AS date))
+FROM (SELECT DISTINCT date_trunc('month', sendTime) AS month FROM MESSAGE_CSV) AS months;
+
+INSERT INTO MESSAGE(msgId, senderNo, receiverNo, contents, sendTime, deleteStatus, status)
+SELECT M.msgId, S.userNo, R.userNo, M.contents, M.sendTime, M.deleteStatus, M.status
+FROM MESSAGE_CSV M JOIN USR S ON S.userId = M.senderId JOIN USR R ON R.userId = M.receiverId;
+
+/* continue msgIds after the loaded messages */
+SELECT setval('msg_id_seq', COALESCE((SELECT MAX(msgId) FROM MESSAGE), 0) + 1, false);
+
+CREATE TEMP TABLE CONNECTION_CSV(
+    userId varchar(30),
+    connectionId varchar(30),
+    status char(30)
+);
+
+COPY CONNECTION_CSV
 FROM 'Connection.csv'
 DELIMITER ',' CSV HEADER;
+
+/* the loaded rows are not changes for running applications to replay */
+ALTER TABLE CONNECTION_USR DISABLE TRIGGER connection_change_log;
+
+INSERT INTO CONNECTION_USR(userNo, connectionNo, status)
+SELECT U.userNo, C.userNo, S.status
+FROM CONNECTION_CSV S JOIN USR U ON U.userId = S.userId JOIN USR C ON C.userId = S.connectionId;
+
+ALTER TABLE CONNECTION_USR ENABLE TRIGGER connection_change_log;
+
+INSERT INTO FRIENDSHIP(lo, hi)
+SELECT DISTINCT LEAST(userNo, connectionNo), GREATEST(userNo, connectionNo)
+FROM CONNECTION_USR
+WHERE status = 'Accept' AND userNo <> connectionNo;